@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Sustained throughput of {@link CloudwatchAppender#doAppend} with an
+ * {@link InMemoryLogSink}, so no AWS calls are made. The {@code text} sink reads each
+ * message as a String, as {@link CloudwatchLogSink} does, and {@code memory} reads
+ * UTF-8 bytes, as the file sink does. Run with {@code -prof gc} to compare the
+ * allocation per event of each encoding.
+ *
+ * <p>Appends are much faster than the daemon thread drains, so on its own the queue
+ * would fill within microseconds and the score would mostly count rejected offers.
+ * Instead a logging thread that finds the queue a quarter full flushes it itself, which
+ * makes every event pay for its formatting and its share of the sink. The
+ * {@code enqueued} and {@code dropped} counters are reported next to the score; dropped
+ * should stay at zero, otherwise the score includes rejected events.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppenderBenchmark {
+    private static final Logger logger = Logger.getLogger(AppenderBenchmark.class);
+
+    private static final int QUEUE_LENGTH = 1 << 16;
+
+    private static final int FLUSH_THRESHOLD = QUEUE_LENGTH / 4;
+
+    @Param({CloudwatchAppender.ENCODING_DEFERRED, CloudwatchAppender.ENCODING_LAYOUT, CloudwatchAppender.ENCODING_JSON})
+    public String encoding;
+
+    @Param({"memory", "text"})
+    public String sink;
+
+    private CloudwatchAppender appender;
+
+    /**
+     * Reads every message as a String and keeps nothing.
+     */
+    static final class TextLogSink extends InMemoryLogSink {
+        private long chars;
+
+        TextLogSink() {
+            super(0);
+        }
+
+        @Override
+        public boolean acceptsText() {
+            return true;
+        }
+
+        @Override
+        public void send(List<EncodedLogEvent> events) {
+            for (int i = 0; i < events.size(); ++i) {
+                chars += events.get(i).getMessageAsString().length();
+            }
+            super.send(events);
+        }
+    }
+
+    /**
+     * Events enqueued and dropped by the appender during each iteration. The appender's
+     * counters are shared, so only the first thread reports them.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        private AppenderMetrics metrics;
+        private long enqueuedAtStart;
+        private long droppedAtStart;
+
+        @Setup(org.openjdk.jmh.annotations.Level.Iteration)
+        public void start(AppenderBenchmark benchmark, ThreadParams threadParams) {
+            metrics = threadParams.getThreadIndex() == 0 ? benchmark.appender.getMetrics() : null;
+            if (metrics != null) {
+                enqueuedAtStart = metrics.getEnqueuedEvents();
+                droppedAtStart = metrics.getDroppedEvents();
+            }
+        }
+
+        public long enqueued() {
+            return metrics == null ? 0 : metrics.getEnqueuedEvents() - enqueuedAtStart;
+        }
+
+        public long dropped() {
+            return metrics == null ? 0 : metrics.getDroppedEvents() - droppedAtStart;
+        }
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setup() {
+        appender = new CloudwatchAppender();
+        appender.setName("benchmark");
+        appender.setLayout(new PatternLayout("%d [%t] %-5p %c - %m%n"));
+        appender.setLogGroupName("benchmark");
+        appender.setLogStreamName(encoding);
+        appender.setEncoding(encoding);
+        appender.setLogSink("text".equals(sink) ? new TextLogSink() : new InMemoryLogSink(1024));
+        appender.setQueueLength(QUEUE_LENGTH);
+        appender.setMessagesBatchSize(10000);
+        appender.activateOptions();
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Trial)
+    public void tearDown() {
+        appender.close();
+    }
+
+    private void append() {
+        appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+                "benchmark message with some payload", null));
+        if (appender.getMetrics().getQueueDepth() >= FLUSH_THRESHOLD) {
+            appender.flushQueue();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1(Counters counters) {
+        append();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void append4(Counters counters) {
+        append();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void append8(Counters counters) {
+        append();
+    }
+}
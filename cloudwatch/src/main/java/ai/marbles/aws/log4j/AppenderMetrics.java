@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Self metrics for {@link CloudwatchAppender}. The append path only touches striped
+ * {@link LongAdder} counters; histograms are recorded on the flushing thread.
+ */
+public class AppenderMetrics implements AppenderMetricsMXBean {
+
+    private final IntSupplier queueDepth;
+
+    private final LongAdder enqueuedEvents = new LongAdder();
+
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private final LongAdder rateLimitedEvents = new LongAdder();
+
+    private final LongAdder suppressedDuplicates = new LongAdder();
+
+    private final LongAdder failedBatches = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder throttles = new LongAdder();
+
+    private final Histogram queueDepthHistogram = new Histogram();
+
+    private final Histogram batchEvents = new Histogram();
+
+    private final Histogram batchBytes = new Histogram();
+
+    private final Histogram sendLatencyNanos = new Histogram();
+
+    /**
+     * Totals at the last Embedded Metric Format record, owned by the flushing thread
+     */
+    private long lastEnqueued;
+
+    private long lastDropped;
+
+    private long lastRateLimited;
+
+    private long lastSuppressed;
+
+    private long lastRetries;
+
+    private long lastThrottles;
+
+    private long lastBatches;
+
+    private long lastBatchEventsSum;
+
+    private long lastBatchBytesSum;
+
+    private long lastSendLatencySum;
+
+    /**
+     * @param queueDepth Reports the current number of queued events.
+     */
+    public AppenderMetrics(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    void recordEnqueued() {
+        enqueuedEvents.increment();
+    }
+
+    void recordDropped(long events) {
+        droppedEvents.add(events);
+    }
+
+    void recordRateLimited() {
+        rateLimitedEvents.increment();
+    }
+
+    void recordSuppressed() {
+        suppressedDuplicates.increment();
+    }
+
+    void recordQueueDepth(int depth) {
+        queueDepthHistogram.record(depth);
+    }
+
+    void recordBatch(int events, long bytes, long latencyNanos) {
+        batchEvents.record(events);
+        batchBytes.record(bytes);
+        sendLatencyNanos.record(latencyNanos);
+    }
+
+    void recordFailedBatch(int events) {
+        failedBatches.increment();
+        droppedEvents.add(events);
+    }
+
+    /**
+     * Called by sinks each time a request is retried.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * Called by sinks each time the service throttles a request.
+     */
+    public void recordThrottle() {
+        throttles.increment();
+    }
+
+    @Override
+    public long getEnqueuedEvents() {
+        return enqueuedEvents.sum();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    @Override
+    public long getRateLimitedEvents() {
+        return rateLimitedEvents.sum();
+    }
+
+    @Override
+    public long getSuppressedDuplicates() {
+        return suppressedDuplicates.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public long getQueueDepthMax() {
+        return queueDepthHistogram.getMax();
+    }
+
+    @Override
+    public long getBatches() {
+        return batchEvents.getCount();
+    }
+
+    @Override
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getThrottles() {
+        return throttles.sum();
+    }
+
+    @Override
+    public double getBatchEventsMean() {
+        return batchEvents.getMean();
+    }
+
+    @Override
+    public long getBatchEventsMax() {
+        return batchEvents.getMax();
+    }
+
+    @Override
+    public double getBatchBytesMean() {
+        return batchBytes.getMean();
+    }
+
+    @Override
+    public long getBatchBytesMax() {
+        return batchBytes.getMax();
+    }
+
+    @Override
+    public double getSendLatencyMillisMean() {
+        return sendLatencyNanos.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getSendLatencyMillisP50() {
+        return toMillis(sendLatencyNanos.getPercentile(50));
+    }
+
+    @Override
+    public double getSendLatencyMillisP99() {
+        return toMillis(sendLatencyNanos.getPercentile(99));
+    }
+
+    @Override
+    public double getSendLatencyMillisMax() {
+        return toMillis(sendLatencyNanos.getMax());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Append a CloudWatch Embedded Metric Format record covering the interval since the
+     * previous call. Counters are reported as deltas, batch sizes and latency as interval
+     * means. Must only be called from the flushing thread.
+     */
+    void appendEmbeddedMetricFormat(StringBuilder out, String namespace, String logGroupName,
+                                    String logStreamName, long timestamp) {
+        long enqueued = getEnqueuedEvents();
+        long dropped = getDroppedEvents();
+        long rateLimited = getRateLimitedEvents();
+        long suppressed = getSuppressedDuplicates();
+        long retried = getRetries();
+        long throttled = getThrottles();
+        long batches = batchEvents.getCount();
+        long eventsSum = batchEvents.getSum();
+        long bytesSum = batchBytes.getSum();
+        long latencySum = sendLatencyNanos.getSum();
+        long intervalBatches = batches - lastBatches;
+
+        out.append("{\"_aws\":{\"Timestamp\":").append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        JsonLogEventEncoder.appendString(out, namespace);
+        out.append(",\"Dimensions\":[[\"LogGroup\",\"LogStream\"]],\"Metrics\":[")
+                .append("{\"Name\":\"EnqueuedEvents\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"DroppedEvents\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"RateLimitedEvents\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"SuppressedDuplicates\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"QueueDepth\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"Batches\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"Retries\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"Throttles\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"BatchEvents\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"BatchBytes\",\"Unit\":\"Bytes\"},")
+                .append("{\"Name\":\"SendLatency\",\"Unit\":\"Milliseconds\"}]}]}");
+        out.append(",\"LogGroup\":");
+        JsonLogEventEncoder.appendString(out, logGroupName);
+        out.append(",\"LogStream\":");
+        JsonLogEventEncoder.appendString(out, logStreamName);
+        out.append(",\"EnqueuedEvents\":").append(enqueued - lastEnqueued)
+                .append(",\"DroppedEvents\":").append(dropped - lastDropped)
+                .append(",\"RateLimitedEvents\":").append(rateLimited - lastRateLimited)
+                .append(",\"SuppressedDuplicates\":").append(suppressed - lastSuppressed)
+                .append(",\"QueueDepth\":").append(getQueueDepth())
+                .append(",\"Batches\":").append(intervalBatches)
+                .append(",\"Retries\":").append(retried - lastRetries)
+                .append(",\"Throttles\":").append(throttled - lastThrottles)
+                .append(",\"BatchEvents\":").append(mean(eventsSum - lastBatchEventsSum, intervalBatches))
+                .append(",\"BatchBytes\":").append(mean(bytesSum - lastBatchBytesSum, intervalBatches))
+                .append(",\"SendLatency\":")
+                .append(toMillis((long) mean(latencySum - lastSendLatencySum, intervalBatches)))
+                .append('}');
+
+        lastEnqueued = enqueued;
+        lastDropped = dropped;
+        lastRateLimited = rateLimited;
+        lastSuppressed = suppressed;
+        lastRetries = retried;
+        lastThrottles = throttled;
+        lastBatches = batches;
+        lastBatchEventsSum = eventsSum;
+        lastBatchBytesSum = bytesSum;
+        lastSendLatencySum = latencySum;
+    }
+
+    private static double mean(long sum, long count) {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+/**
+ * JMX view of {@link AppenderMetrics}. Registered as
+ * {@code ai.marbles.aws.log4j:type=CloudwatchAppender,name=<appender name>}.
+ * Counters are cumulative since the appender was activated.
+ */
+public interface AppenderMetricsMXBean {
+
+    long getEnqueuedEvents();
+
+    long getDroppedEvents();
+
+    long getRateLimitedEvents();
+
+    long getSuppressedDuplicates();
+
+    int getQueueDepth();
+
+    long getQueueDepthMax();
+
+    long getBatches();
+
+    long getFailedBatches();
+
+    long getRetries();
+
+    long getThrottles();
+
+    double getBatchEventsMean();
+
+    long getBatchEventsMax();
+
+    double getBatchBytesMean();
+
+    long getBatchBytesMax();
+
+    double getSendLatencyMillisMean();
+
+    double getSendLatencyMillisP50();
+
+    double getSendLatencyMillisP99();
+
+    double getSendLatencyMillisMax();
+}
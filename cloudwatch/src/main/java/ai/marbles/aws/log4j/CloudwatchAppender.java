@@ -0,0 +1,633 @@
+// Original source code - https://github.com/speedwing/log4j-cloudwatch-appender
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Layout;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.ObjectName;
+
+public class CloudwatchAppender extends AppenderSkeleton {
+
+    /**
+     * Format events with the layout on the flushing thread (the default).
+     */
+    public static final String ENCODING_DEFERRED = "deferred";
+
+    /**
+     * Format events with the layout on the logging thread.
+     */
+    public static final String ENCODING_LAYOUT = "layout";
+
+    /**
+     * Encode events as compact JSON on the logging thread.
+     */
+    public static final String ENCODING_JSON = "json";
+
+    /**
+     * Send batches to AWS Cloudwatch Logs (the default).
+     */
+    public static final String SINK_CLOUDWATCH = "cloudwatch";
+
+    /**
+     * Write batches to a local rolling file.
+     */
+    public static final String SINK_FILE = "file";
+
+    /**
+     * Keep batches in memory, see {@link InMemoryLogSink}.
+     */
+    public static final String SINK_MEMORY = "memory";
+
+    /**
+     * Per thread scratch space used when encoding on the logging thread.
+     */
+    private static final ThreadLocal<EncodingBuffer> ENCODING_BUFFER = ThreadLocal.withInitial(EncodingBuffer::new);
+
+    /**
+     * Delay before retrying a failed LogSink.connect, doubled after each failure up to the maximum
+     */
+    private static final long CONNECT_RETRY_MIN_MILLIS = 1000L;
+
+    private static final long CONNECT_RETRY_MAX_MILLIS = 60000L;
+
+    /**
+     * How long close waits for the flushing thread to finish its current batch
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000L;
+
+    private final Boolean DEBUG_MODE = System.getProperty("log4j.debug") != null;
+
+    /**
+     * The queue used to buffer log entries
+     */
+    private LinkedBlockingQueue<EncodedLogEvent> loggingEventsQueue;
+
+    /**
+     * How log entries are encoded, one of the ENCODING_* constants
+     */
+    private String encoding = ENCODING_DEFERRED;
+
+    private LogEventEncoder encoder;
+
+    private boolean encodeOnAppend;
+
+    /**
+     * Whether events encoded on append are kept as strings, see {@link LogSink#acceptsText}
+     */
+    private boolean encodeToText;
+
+    private final List<EncodedLogEvent> pendingEvents = new ArrayList<>();
+
+    /**
+     * Serialises flushes between the daemon and close. Deliberately not the appender's
+     * own monitor, which doAppend holds, so a slow send or a retry backoff in the sink
+     * never blocks logging threads.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Sink connection state, guarded by flushLock
+     */
+    private boolean sinkConnected;
+
+    private long connectRetryMillis = CONNECT_RETRY_MIN_MILLIS;
+
+    private long nextConnectAttempt;
+
+    /**
+     * Where batches are sent
+     */
+    private LogSink logSink;
+
+    /**
+     * The sink type used when no LogSink is supplied, one of the SINK_* constants or a class name
+     */
+    private String sink = SINK_CLOUDWATCH;
+
+    /**
+     * Cloudwatch endpoint and signing region overrides, e.g. for a local stand-in service
+     */
+    private String endpoint;
+
+    private String region;
+
+    /**
+     * File sink options
+     */
+    private String file;
+
+    private long maxFileSize = 10 * 1024 * 1024;
+
+    private int maxBackupIndex = 1;
+
+    /**
+     * The AWS Cloudwatch Log group name
+     */
+    private String logGroupName;
+
+    /**
+     * The AWS Cloudwatch Log stream name
+     */
+    private String logStreamName;
+
+    /**
+     * The queue / buffer size
+     */
+    private int queueLength = 1024;
+
+    /**
+     * The maximum number of log entries to send in one go to the AWS Cloudwatch Log service
+     */
+    private int messagesBatchSize = 128;
+
+    private AtomicBoolean cloudwatchAppenderInitialised = new AtomicBoolean(false);
+
+    /**
+     * Self metrics, exposed over JMX
+     */
+    private final AppenderMetrics metrics = new AppenderMetrics(
+            () -> loggingEventsQueue == null ? 0 : loggingEventsQueue.size());
+
+    private ObjectName metricsObjectName;
+
+    /**
+     * How often to emit an Embedded Metric Format record, zero to disable
+     */
+    private long metricsEmfInterval;
+
+    private String metricsNamespace = "CloudwatchAppender";
+
+    private long nextMetricsEmf;
+
+    /**
+     * Rate limits and duplicate suppression, see {@link EventThrottle}
+     */
+    private String rateLimits;
+
+    private long duplicateWindow;
+
+    private EventThrottle eventThrottle;
+
+    private Thread daemon;
+
+    public CloudwatchAppender() {
+        super();
+    }
+
+    public CloudwatchAppender(Layout layout, String logGroupName, String logStreamName) {
+        super();
+        this.setLayout(layout);
+        this.setLogGroupName(logGroupName);
+        this.setLogStreamName(logStreamName);
+        this.activateOptions();
+    }
+
+    public CloudwatchAppender(Layout layout, String logGroupName, String logStreamName, LogSink logSink) {
+        this(null, layout, logGroupName, logStreamName, logSink);
+    }
+
+    /**
+     * Create and activate a named appender. The name is used for the metrics MXBean and
+     * the flushing thread, so appenders created in code should be given one here rather
+     * than with setName afterwards.
+     *
+     * @param logSink The sink, or null to create one from the sink option.
+     */
+    public CloudwatchAppender(String name, Layout layout, String logGroupName, String logStreamName, LogSink logSink) {
+        super();
+        this.setName(name);
+        this.setLayout(layout);
+        this.setLogGroupName(logGroupName);
+        this.setLogStreamName(logStreamName);
+        this.setLogSink(logSink);
+        this.activateOptions();
+    }
+
+    /**
+     * Set the appender name. If the appender is already active its metrics MXBean is
+     * registered again under the new name and the flushing thread is renamed.
+     */
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        if (metricsObjectName != null) {
+            unregisterMetrics();
+            registerMetrics();
+        }
+        Thread thread = daemon;
+        if (thread != null) {
+            thread.setName("CloudwatchAppender-" + displayName());
+        }
+    }
+
+    public void setLogGroupName(String logGroupName) {
+        this.logGroupName = logGroupName;
+    }
+
+    public void setLogStreamName(String logStreamName) {
+        this.logStreamName = logStreamName;
+    }
+
+    public void setQueueLength(int queueLength) {
+        this.queueLength = queueLength;
+    }
+
+    public void setMessagesBatchSize(int messagesBatchSize) {
+        this.messagesBatchSize = messagesBatchSize;
+    }
+
+    /**
+     * Select how events are encoded. With {@code deferred} the whole LoggingEvent is
+     * queued and formatted by the layout on the flushing thread, and the layout's String
+     * goes to the sink without a round trip through UTF-8. With {@code layout}
+     * or {@code json} the event is encoded once on the logging thread and only the
+     * message and the timestamp are queued, as a String for sinks that accept text,
+     * such as Cloudwatch, and as UTF-8 bytes otherwise.
+     *
+     * @param encoding One of deferred, layout or json.
+     */
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Select the sink used when none was supplied with {@link #setLogSink}.
+     *
+     * @param sink One of cloudwatch, file, memory, or the class name of a LogSink
+     *             with a public no-argument constructor.
+     */
+    public void setSink(String sink) {
+        this.sink = sink;
+    }
+
+    public void setLogSink(LogSink logSink) {
+        this.logSink = logSink;
+    }
+
+    public LogSink getLogSink() {
+        return logSink;
+    }
+
+    /**
+     * Override the Cloudwatch Logs endpoint, for example http://localhost:4586.
+     */
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    /**
+     * @param maxFileSize The roll over size for the file sink, e.g. 10MB.
+     */
+    public void setMaxFileSize(String maxFileSize) {
+        this.maxFileSize = OptionConverter.toFileSize(maxFileSize, this.maxFileSize + 1);
+    }
+
+    public void setMaxBackupIndex(int maxBackupIndex) {
+        this.maxBackupIndex = maxBackupIndex;
+    }
+
+    /**
+     * Emit the appender metrics as a CloudWatch Embedded Metric Format record into the
+     * log stream every {@code metricsEmfInterval} milliseconds. Zero, the default,
+     * disables emission. The metrics are always available over JMX.
+     */
+    public void setMetricsEmfInterval(long metricsEmfInterval) {
+        this.metricsEmfInterval = metricsEmfInterval;
+    }
+
+    public void setMetricsNamespace(String metricsNamespace) {
+        this.metricsNamespace = metricsNamespace;
+    }
+
+    /**
+     * Limit events per logger and level, e.g. {@code WARN=100,ERROR=100:500,ai.marbles.grpc=10}.
+     * Each entry is {@code key=rate[:burst]} in events per second, where the key is a level,
+     * a logger name (covering its descendants) or {@code *}. Events over the limit are
+     * dropped and counted in the metrics. A rate of zero drops every matching event.
+     */
+    public void setRateLimits(String rateLimits) {
+        this.rateLimits = rateLimits;
+    }
+
+    /**
+     * Collapse repeated events from the same logger with the same message template and
+     * throwable type into a single summary per window of {@code duplicateWindow}
+     * milliseconds. Zero, the default, disables suppression.
+     */
+    public void setDuplicateWindow(long duplicateWindow) {
+        this.duplicateWindow = duplicateWindow;
+    }
+
+    public AppenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    protected void append(LoggingEvent event) {
+        if (cloudwatchAppenderInitialised.get()) {
+            if (eventThrottle != null && !eventThrottle.accept(event)) {
+                return;
+            }
+            if (loggingEventsQueue.offer(encode(event))) {
+                metrics.recordEnqueued();
+            } else {
+                metrics.recordDropped(1);
+            }
+        } else {
+            // just do nothing
+        }
+    }
+
+    private void sendMessages() {
+        synchronized (flushLock) {
+            flush();
+        }
+    }
+
+    /**
+     * Send everything queued so far from the calling thread. Used by close, and by
+     * benchmarks that must not outrun the sink.
+     */
+    void flushQueue() {
+        if (logSink == null || !connectSink(true)) {
+            return;
+        }
+        while (loggingEventsQueue != null && !loggingEventsQueue.isEmpty()) {
+            sendMessages();
+        }
+    }
+
+    /**
+     * Connect the sink unless it is connected already or the delay after the last
+     * failure has not passed. Runs outside the appender's monitor, and failures are
+     * reported through LogLog, so a slow or unreachable service cannot block or recurse
+     * into logging.
+     *
+     * @param force Try now even if the delay has not passed.
+     * @return True if the sink is connected.
+     */
+    private boolean connectSink(boolean force) {
+        synchronized (flushLock) {
+            if (!sinkConnected && (force || System.currentTimeMillis() >= nextConnectAttempt)) {
+                try {
+                    logSink.connect();
+                    sinkConnected = true;
+                } catch (Exception e) {
+                    LogLog.warn("CloudwatchAppender " + displayName() + " could not connect to its sink, retrying in "
+                            + connectRetryMillis + " ms: " + e);
+                    nextConnectAttempt = System.currentTimeMillis() + connectRetryMillis;
+                    connectRetryMillis = Math.min(2 * connectRetryMillis, CONNECT_RETRY_MAX_MILLIS);
+                }
+            }
+            return sinkConnected;
+        }
+    }
+
+    private void flush() {
+        try {
+
+            metrics.recordQueueDepth(loggingEventsQueue.size());
+            loggingEventsQueue.drainTo(pendingEvents, messagesBatchSize);
+
+            long bytes = 0;
+            for (int i = 0; i < pendingEvents.size(); ++i) {
+                EncodedLogEvent event = pendingEvents.get(i);
+                event.resolve(encoder, ENCODING_BUFFER.get());
+                bytes += event.getMessageLength();
+            }
+
+            if (!pendingEvents.isEmpty()) {
+                long start = System.nanoTime();
+                logSink.send(pendingEvents);
+                metrics.recordBatch(pendingEvents.size(), bytes, System.nanoTime() - start);
+            }
+        } catch (Exception e) {
+            metrics.recordFailedBatch(pendingEvents.size());
+            if (DEBUG_MODE) {
+                e.printStackTrace();
+            }
+        } finally {
+            pendingEvents.clear();
+        }
+
+    }
+
+    @Override
+    public void close() {
+        cloudwatchAppenderInitialised.set(false);
+        // Let the flushing thread finish its batch and exit before the final flush. It
+        // is not interrupted, since that could abort a request to the sink mid-batch.
+        Thread thread = daemon;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(CLOSE_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (thread.isAlive()) {
+                LogLog.warn("CloudwatchAppender " + displayName() + " flushing thread did not stop within "
+                        + CLOSE_TIMEOUT_MILLIS + " ms");
+            }
+        }
+        if (eventThrottle != null) {
+            eventThrottle.drainSummaries(Long.MAX_VALUE, this::enqueueSummary);
+        }
+        flushQueue();
+        if (loggingEventsQueue != null && !loggingEventsQueue.isEmpty()) {
+            // The sink never connected.
+            metrics.recordDropped(loggingEventsQueue.size());
+            loggingEventsQueue.clear();
+        }
+        if (logSink != null) {
+            logSink.close();
+        }
+        unregisterMetrics();
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return true;
+    }
+
+    @Override
+    public void activateOptions() {
+        super.activateOptions();
+        if (isBlank(logGroupName) || isBlank(logStreamName)) {
+            Logger.getRootLogger().error("Could not initialise CloudwatchAppender because either or both LogGroupName(" + logGroupName + ") and LogStreamName(" + logStreamName + ") are null or empty");
+            this.close();
+        } else {
+            loggingEventsQueue = new LinkedBlockingQueue<>(queueLength);
+            if (ENCODING_JSON.equalsIgnoreCase(encoding)) {
+                encoder = new JsonLogEventEncoder();
+                encodeOnAppend = true;
+            } else {
+                encoder = new LayoutLogEventEncoder(layout);
+                encodeOnAppend = ENCODING_LAYOUT.equalsIgnoreCase(encoding);
+            }
+            try {
+                if (!isBlank(rateLimits) || duplicateWindow > 0) {
+                    eventThrottle = new EventThrottle(rateLimits, duplicateWindow, metrics);
+                }
+                if (logSink == null) {
+                    logSink = createLogSink();
+                }
+                encodeToText = logSink.acceptsText();
+                logSink.setMetrics(metrics);
+                if (metricsEmfInterval > 0 && logSink instanceof CloudwatchLogSink) {
+                    ((CloudwatchLogSink) logSink).setEmbeddedMetricFormat(true);
+                }
+                logSink.open(logGroupName, logStreamName);
+                registerMetrics();
+                cloudwatchAppenderInitialised.set(true);
+                initCloudwatchDaemon();
+            } catch (Exception e) {
+                Logger.getRootLogger().error("Could not initialise Cloudwatch Logs for LogGroupName: " + logGroupName + " and LogStreamName: " + logStreamName, e);
+                if (DEBUG_MODE) {
+                    System.err.println("Could not initialise Cloudwatch Logs for LogGroupName: " + logGroupName + " and LogStreamName: " + logStreamName);
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private LogSink createLogSink() throws Exception {
+        if (isBlank(sink) || SINK_CLOUDWATCH.equalsIgnoreCase(sink)) {
+            return new CloudwatchLogSink(endpoint, region);
+        } else if (SINK_FILE.equalsIgnoreCase(sink)) {
+            if (isBlank(file)) {
+                throw new IllegalArgumentException("File must be set when using the file sink");
+            }
+            return new RollingFileLogSink(file, maxFileSize, maxBackupIndex);
+        } else if (SINK_MEMORY.equalsIgnoreCase(sink)) {
+            return new InMemoryLogSink(queueLength);
+        }
+        return (LogSink) Class.forName(sink).newInstance();
+    }
+
+    private void initCloudwatchDaemon() {
+        daemon = new Thread(() -> {
+            while (cloudwatchAppenderInitialised.get()) {
+                try {
+                    if (eventThrottle != null) {
+                        eventThrottle.drainSummaries(System.currentTimeMillis(), this::enqueueSummary);
+                    }
+                    if (metricsEmfInterval > 0) {
+                        emitMetrics();
+                    }
+                    if (connectSink(false) && loggingEventsQueue.size() > 0) {
+                        sendMessages();
+                    }
+                    Thread.currentThread().sleep(20L);
+                } catch (InterruptedException e) {
+                    if (DEBUG_MODE) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "CloudwatchAppender-" + displayName());
+        daemon.setDaemon(true);
+        daemon.start();
+    }
+
+    /**
+     * Encode an event for the queue according to the encoding and the sink. Must be
+     * called with the appender's monitor held when encoding on append.
+     */
+    private EncodedLogEvent encode(LoggingEvent event) {
+        if (!encodeOnAppend) {
+            return new EncodedLogEvent(event);
+        }
+        EncodingBuffer buffer = ENCODING_BUFFER.get();
+        return encodeToText
+                ? new EncodedLogEvent(event.getTimeStamp(), buffer.format(event, encoder))
+                : new EncodedLogEvent(event.getTimeStamp(), buffer.encode(event, encoder));
+    }
+
+    /**
+     * Queue a throttle summary, encoded the same way as appended events. When encoding
+     * on append, logging threads use the encoder while holding the appender's monitor,
+     * and a shared layout such as PatternLayout is not thread safe, so the summary is
+     * encoded under that monitor too.
+     */
+    private void enqueueSummary(LoggingEvent summary) {
+        EncodedLogEvent event;
+        synchronized (this) {
+            event = encode(summary);
+        }
+        if (loggingEventsQueue.offer(event)) {
+            metrics.recordEnqueued();
+        } else {
+            metrics.recordDropped(1);
+        }
+    }
+
+    private void emitMetrics() {
+        long now = System.currentTimeMillis();
+        if (now >= nextMetricsEmf) {
+            if (nextMetricsEmf != 0) {
+                StringBuilder record = new StringBuilder(1024);
+                metrics.appendEmbeddedMetricFormat(record, metricsNamespace, logGroupName, logStreamName, now);
+                loggingEventsQueue.offer(new EncodedLogEvent(now, record.toString()));
+            }
+            nextMetricsEmf = now + metricsEmfInterval;
+        }
+    }
+
+    private void registerMetrics() {
+        try {
+            metricsObjectName = new ObjectName("ai.marbles.aws.log4j:type=CloudwatchAppender,name="
+                    + ObjectName.quote(displayName()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsObjectName);
+        } catch (Exception e) {
+            LogLog.warn("Could not register metrics for CloudwatchAppender " + displayName() + ": " + e);
+            metricsObjectName = null;
+            if (DEBUG_MODE) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsObjectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsObjectName);
+            } catch (Exception e) {
+                if (DEBUG_MODE) {
+                    e.printStackTrace();
+                }
+            }
+            metricsObjectName = null;
+        }
+    }
+
+    /**
+     * @return The appender name, or a name unique to this instance if none was set, so
+     *         unnamed appenders do not clash over the MXBean name.
+     */
+    private String displayName() {
+        String name = getName();
+        return name != null ? name : "unnamed@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    private boolean isBlank(String string) {
+        return null == string || string.trim().length() == 0;
+    }
+
+}
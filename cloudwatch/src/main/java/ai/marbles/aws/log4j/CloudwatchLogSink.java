@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.services.logs.AWSLogs;
+import com.amazonaws.services.logs.AWSLogsClientBuilder;
+import com.amazonaws.services.logs.model.*;
+import org.apache.log4j.helpers.LogLog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Sends batches to AWS Cloudwatch Logs with PutLogEvents. Sequence token errors,
+ * throttling and server errors are retried here rather than inside the SDK so they
+ * show up in the appender metrics.
+ *
+ * <p>The SDK's InputLogEvent only takes a String, so this sink {@link #acceptsText
+ * accepts text} and the appender queues Strings for it with every encoding. They are
+ * passed through as is, and only the InputLogEvent objects and their list are reused
+ * between batches.</p>
+ *
+ * <p>The client is created, and the log group and stream are checked, in
+ * {@link #connect}. The appender calls that on its daemon thread, outside its lock and
+ * with a backoff between failed attempts, so neither configuring log4j nor logging
+ * waits for the SDK to load or for Cloudwatch to respond.</p>
+ */
+public class CloudwatchLogSink implements LogSink {
+
+    /**
+     * The maximum number of retries for one batch
+     */
+    private static final int MAX_RETRIES = 3;
+
+    private static final long RETRY_BASE_DELAY_MILLIS = 100L;
+
+    private final Boolean DEBUG_MODE = System.getProperty("log4j.debug") != null;
+
+    /**
+     * the AWS Cloudwatch Logs API client
+     */
+    private AWSLogs awsLogsClient;
+
+    /**
+     * Service endpoint override, null for the default endpoint
+     */
+    private final String endpoint;
+
+    /**
+     * Signing region used with the endpoint override
+     */
+    private final String region;
+
+    private String lastSequenceToken;
+
+    private AppenderMetrics metrics = new AppenderMetrics(() -> 0);
+
+    /**
+     * Ask Cloudwatch to extract Embedded Metric Format records from each batch
+     */
+    private boolean embeddedMetricFormat;
+
+    private String logGroupName;
+
+    private String logStreamName;
+
+    /**
+     * Set once the client exists and the log group and stream have been checked
+     */
+    private volatile boolean initialised;
+
+    /**
+     * Reused for every batch, grown on demand
+     */
+    private final List<InputLogEvent> inputLogEventPool = new ArrayList<>();
+
+    private final List<InputLogEvent> inputLogEvents = new ArrayList<>();
+
+    /**
+     * Create a sink using the default client configuration and credentials chain.
+     */
+    public CloudwatchLogSink() {
+        this(null, null);
+    }
+
+    /**
+     * Create a sink talking to {@code endpoint}, for example a local stand-in service.
+     *
+     * @param endpoint  The service URL, or null for the default endpoint.
+     * @param region    The signing region, or null for the default region.
+     */
+    public CloudwatchLogSink(String endpoint, String region) {
+        this.endpoint = endpoint;
+        this.region = region;
+    }
+
+    /**
+     * Create a sink using an existing client.
+     *
+     * @param awsLogsClient The client.
+     */
+    public CloudwatchLogSink(AWSLogs awsLogsClient) {
+        this(null, null);
+        this.awsLogsClient = awsLogsClient;
+    }
+
+    @Override
+    public boolean acceptsText() {
+        return true;
+    }
+
+    @Override
+    public void setMetrics(AppenderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Send the {@code x-amzn-logs-format: json/emf} header so Cloudwatch extracts
+     * metrics from Embedded Metric Format records. Other events are stored as usual.
+     */
+    public void setEmbeddedMetricFormat(boolean embeddedMetricFormat) {
+        this.embeddedMetricFormat = embeddedMetricFormat;
+    }
+
+    @Override
+    public void open(String logGroupName, String logStreamName) {
+        this.logGroupName = logGroupName;
+        this.logStreamName = logStreamName;
+    }
+
+    @Override
+    public void connect() {
+        if (awsLogsClient == null) {
+            awsLogsClient = createClient();
+        }
+        initializeCloudwatchResources();
+        initialised = true;
+    }
+
+    private AWSLogs createClient() {
+        AWSLogsClientBuilder builder = AWSLogsClientBuilder.standard()
+                .withClientConfiguration(new ClientConfiguration()
+                        .withRetryPolicy(PredefinedRetryPolicies.NO_RETRY_POLICY));
+        if (endpoint != null) {
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region));
+        } else if (region != null) {
+            builder.withRegion(region);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void send(List<EncodedLogEvent> events) throws InterruptedException {
+        if (!initialised) {
+            throw new IllegalStateException("Not connected to Cloudwatch Logs");
+        }
+        while (inputLogEventPool.size() < events.size()) {
+            inputLogEventPool.add(new InputLogEvent());
+        }
+        try {
+            for (int i = 0; i < events.size(); ++i) {
+                EncodedLogEvent event = events.get(i);
+                InputLogEvent inputLogEvent = inputLogEventPool.get(i);
+                inputLogEvent.setTimestamp(event.getTimestamp());
+                inputLogEvent.setMessage(event.getMessageAsString());
+                inputLogEvents.add(inputLogEvent);
+            }
+
+            PutLogEventsRequest putLogEventsRequest = new PutLogEventsRequest(
+                    logGroupName,
+                    logStreamName,
+                    inputLogEvents);
+            if (embeddedMetricFormat) {
+                putLogEventsRequest.putCustomRequestHeader("x-amzn-logs-format", "json/emf");
+            }
+
+            for (int attempt = 0; ; ++attempt) {
+                if (attempt > 0) {
+                    metrics.recordRetry();
+                }
+                try {
+                    putLogEventsRequest.setSequenceToken(lastSequenceToken);
+                    PutLogEventsResult result = awsLogsClient.putLogEvents(putLogEventsRequest);
+                    lastSequenceToken = result.getNextSequenceToken();
+                    return;
+                } catch (InvalidSequenceTokenException invalidSequenceTokenException) {
+                    lastSequenceToken = invalidSequenceTokenException.getExpectedSequenceToken();
+                    if (DEBUG_MODE) {
+                        invalidSequenceTokenException.printStackTrace();
+                    }
+                    if (attempt >= MAX_RETRIES) {
+                        throw invalidSequenceTokenException;
+                    }
+                } catch (DataAlreadyAcceptedException dataAlreadyAcceptedException) {
+                    // A previous attempt got through, nothing left to do.
+                    lastSequenceToken = dataAlreadyAcceptedException.getExpectedSequenceToken();
+                    return;
+                } catch (AmazonServiceException serviceException) {
+                    boolean throttled = "ThrottlingException".equals(serviceException.getErrorCode());
+                    if (throttled) {
+                        metrics.recordThrottle();
+                    }
+                    if (attempt >= MAX_RETRIES || !(throttled || serviceException.getStatusCode() >= 500)) {
+                        throw serviceException;
+                    }
+                    Thread.sleep(RETRY_BASE_DELAY_MILLIS << attempt);
+                }
+            }
+        } finally {
+            // Drop references so the pooled objects do not pin the last batch.
+            for (InputLogEvent inputLogEvent : inputLogEvents) {
+                inputLogEvent.setMessage(null);
+            }
+            inputLogEvents.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (awsLogsClient != null) {
+            awsLogsClient.shutdown();
+        }
+    }
+
+    private void initializeCloudwatchResources() {
+
+        DescribeLogGroupsRequest describeLogGroupsRequest = new DescribeLogGroupsRequest();
+        describeLogGroupsRequest.setLogGroupNamePrefix(logGroupName);
+
+        Optional<LogGroup> logGroupOptional = awsLogsClient
+                .describeLogGroups(describeLogGroupsRequest)
+                .getLogGroups()
+                .stream()
+                .filter(logGroup -> logGroup.getLogGroupName().equals(logGroupName))
+                .findFirst();
+
+        if (!logGroupOptional.isPresent()) {
+            CreateLogGroupRequest createLogGroupRequest = new CreateLogGroupRequest().withLogGroupName(logGroupName);
+            try {
+                awsLogsClient.createLogGroup(createLogGroupRequest);
+            } catch (ResourceAlreadyExistsException e) {
+                // Created by another appender sharing the group since we looked.
+            }
+        }
+
+        DescribeLogStreamsRequest describeLogStreamsRequest = new DescribeLogStreamsRequest().withLogGroupName(logGroupName).withLogStreamNamePrefix(logStreamName);
+
+        Optional<LogStream> logStreamOptional = awsLogsClient
+                .describeLogStreams(describeLogStreamsRequest)
+                .getLogStreams()
+                .stream()
+                .filter(logStream -> logStream.getLogStreamName().equals(logStreamName))
+                .findFirst();
+
+        if (!logStreamOptional.isPresent()) {
+            // LogLog rather than a Logger, this runs on behalf of an appender.
+            LogLog.debug("Creating LogStream: " + logStreamName + " in LogGroup: " + logGroupName);
+            CreateLogStreamRequest createLogStreamRequest = new CreateLogStreamRequest().withLogGroupName(logGroupName).withLogStreamName(logStreamName);
+            awsLogsClient.createLogStream(createLogStreamRequest);
+        } else {
+            // Start from the stream's current token, otherwise the first put always fails.
+            lastSequenceToken = logStreamOptional.get().getUploadSequenceToken();
+        }
+
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A queued log entry. Normally this holds only the encoded message and its timestamp
+ * so the originating {@link LoggingEvent}, together with its MDC and throwable, can be
+ * collected as soon as append returns. The message is kept in the form the sink reads,
+ * a String for sinks that {@link LogSink#acceptsText accept text} and UTF-8 bytes
+ * otherwise. In deferred mode the event is kept and formatted to a String on the
+ * flushing thread instead. Either form is converted only if a sink asks for the other.
+ */
+public final class EncodedLogEvent {
+
+    private final long timestamp;
+
+    private byte[] message;
+
+    private String text;
+
+    private LoggingEvent deferred;
+
+    /**
+     * Create an entry from an already encoded message.
+     *
+     * @param timestamp The event time in milliseconds since the epoch.
+     * @param message   The UTF-8 encoded message.
+     */
+    public EncodedLogEvent(long timestamp, byte[] message) {
+        this.timestamp = timestamp;
+        this.message = message;
+    }
+
+    /**
+     * Create an entry from an already formatted message.
+     *
+     * @param timestamp The event time in milliseconds since the epoch.
+     * @param text      The message.
+     */
+    EncodedLogEvent(long timestamp, String text) {
+        this.timestamp = timestamp;
+        this.text = text;
+    }
+
+    /**
+     * Create an entry whose encoding is deferred until {@link #resolve} is called.
+     */
+    EncodedLogEvent(LoggingEvent event) {
+        this.timestamp = event.getTimeStamp();
+        this.deferred = event;
+    }
+
+    /**
+     * Format a deferred event. Does nothing if the message is already encoded.
+     */
+    void resolve(LogEventEncoder encoder, EncodingBuffer buffer) {
+        if (deferred != null) {
+            text = buffer.format(deferred, encoder);
+            deferred = null;
+        }
+    }
+
+    /**
+     * @return The event time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return The UTF-8 encoded message. Callers must not modify the array.
+     */
+    public byte[] getMessage() {
+        if (message == null && text != null) {
+            message = text.getBytes(StandardCharsets.UTF_8);
+        }
+        return message;
+    }
+
+    /**
+     * @return The message as a string. Free unless the message was encoded to bytes,
+     *         in which case they are decoded into a new string.
+     */
+    public String getMessageAsString() {
+        return text != null ? text : new String(message, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The length of the UTF-8 encoded message, without encoding it.
+     */
+    public int getMessageLength() {
+        if (message != null) {
+            return message.length;
+        }
+        String s = text;
+        int n = s.length();
+        int length = n;
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                // Surrogate pairs are 4 bytes for 2 chars, everything else 3 bytes.
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length += 1;
+            }
+        }
+        return length;
+    }
+}
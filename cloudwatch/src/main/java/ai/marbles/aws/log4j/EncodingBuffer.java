@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space for encoding events. One instance is kept per thread so the
+ * only allocation per event is the final, exactly sized, byte array or string.
+ */
+final class EncodingBuffer {
+
+    /**
+     * Buffers that grow beyond this many chars are dropped after use so a single huge
+     * stack trace does not pin memory on every logging thread.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private StringBuilder chars = new StringBuilder(INITIAL_CAPACITY);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY * 3];
+
+    /**
+     * Encode {@code event} and return its UTF-8 representation.
+     */
+    byte[] encode(LoggingEvent event, LogEventEncoder encoder) {
+        chars.setLength(0);
+        encoder.encode(event, chars);
+        byte[] result = toUtf8(chars);
+        trim();
+        return result;
+    }
+
+    /**
+     * Encode {@code event} and return it as a string.
+     */
+    String format(LoggingEvent event, LogEventEncoder encoder) {
+        String result = encoder.format(event, chars);
+        trim();
+        return result;
+    }
+
+    private void trim() {
+        if (chars.capacity() > MAX_RETAINED_CAPACITY) {
+            chars = new StringBuilder(INITIAL_CAPACITY);
+            bytes = new byte[INITIAL_CAPACITY * 3];
+        }
+    }
+
+    private byte[] toUtf8(CharSequence s) {
+        int n = s.length();
+        if (bytes.length < n * 3) {
+            bytes = new byte[n * 3];
+        }
+        byte[] b = bytes;
+        int pos = 0;
+        for (int i = 0; i < n; ++i) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xC0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[pos++] = (byte) (0xF0 | (cp >> 18));
+                b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, same replacement the JDK encoder uses.
+                b[pos++] = (byte) '?';
+            } else {
+                b[pos++] = (byte) (0xE0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return Arrays.copyOf(b, pos);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Rate limiting and duplicate suppression for the append path.
+ *
+ * <p>Rate limits are token buckets kept per logger and per level. They are configured
+ * with a comma separated list of {@code key=rate[:burst]} entries, where the key is a
+ * level name, a logger name (which also covers its descendants) or {@code *}. The rate
+ * is in events per second and the burst defaults to one second's worth. A rate of zero
+ * drops every matching event and negative rates are rejected. A logger entry
+ * takes precedence over a level entry, which takes precedence over {@code *}. For
+ * example {@code WARN=100,ERROR=100:500,ai.marbles.grpc.ServiceConnector=10}.</p>
+ *
+ * <p>Duplicates are events from the same logger with the same message template and
+ * throwable type. Only the first in each window is passed on; the rest are counted and
+ * reported as a single summary event once the window closes. Candidates are looked up
+ * in a small direct mapped table so the check costs a few hash and reference compares
+ * and allocates only when a new window starts.</p>
+ */
+final class EventThrottle {
+
+    private static final String FQCN = EventThrottle.class.getName();
+
+    private static final int LEVELS = 6;
+
+    private static final int TABLE_SIZE = 1024;
+
+    private static final class Limit {
+        final double rate;
+        final int burst;
+
+        Limit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+    }
+
+    private static final class Duplicate {
+        final String loggerName;
+        final Level level;
+        final Object template;
+        final Class<?> throwableType;
+        final long windowEnd;
+        final AtomicInteger suppressed = new AtomicInteger();
+
+        Duplicate(String loggerName, Level level, Object template, Class<?> throwableType, long windowEnd) {
+            this.loggerName = loggerName;
+            this.level = level;
+            this.template = template;
+            this.throwableType = throwableType;
+            this.windowEnd = windowEnd;
+        }
+
+        boolean matches(String loggerName, Object template, Class<?> throwableType) {
+            return this.throwableType == throwableType
+                    && (this.loggerName == loggerName || this.loggerName.equals(loggerName))
+                    && (this.template == template || this.template.equals(template));
+        }
+    }
+
+    private final AppenderMetrics metrics;
+
+    private final Limit[] levelLimits = new Limit[LEVELS];
+
+    private final Map<String, Limit> loggerLimits = new HashMap<>();
+
+    private final boolean rateLimited;
+
+    private final ConcurrentHashMap<String, TokenBucket[]> buckets = new ConcurrentHashMap<>();
+
+    private final long duplicateWindow;
+
+    private final AtomicReferenceArray<Duplicate> duplicates;
+
+    private final Queue<Duplicate> evicted = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param rateLimits        The rate limit specification, null or empty for none.
+     * @param duplicateWindow   The duplicate window in milliseconds, zero to disable.
+     * @param metrics           Receives the rate limited and suppressed counts.
+     */
+    EventThrottle(String rateLimits, long duplicateWindow, AppenderMetrics metrics) {
+        this.metrics = metrics;
+        this.duplicateWindow = duplicateWindow;
+        this.duplicates = duplicateWindow > 0 ? new AtomicReferenceArray<>(TABLE_SIZE) : null;
+
+        Limit defaultLimit = null;
+        if (rateLimits != null) {
+            for (String entry : rateLimits.split(",")) {
+                entry = entry.trim();
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int eq = entry.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("Invalid rate limit '" + entry + "', expected key=rate[:burst]");
+                }
+                String key = entry.substring(0, eq).trim();
+                String value = entry.substring(eq + 1).trim();
+                int colon = value.indexOf(':');
+                double rate = Double.parseDouble(colon < 0 ? value : value.substring(0, colon));
+                if (!(rate >= 0)) {
+                    throw new IllegalArgumentException("Invalid rate limit '" + entry + "', the rate must not be negative");
+                }
+                int burst = colon < 0 ? (int) Math.max(1, Math.ceil(rate)) : Integer.parseInt(value.substring(colon + 1));
+                Limit limit = new Limit(rate, burst);
+
+                Level level = Level.toLevel(key, null);
+                if ("*".equals(key)) {
+                    defaultLimit = limit;
+                } else if (level != null) {
+                    levelLimits[levelIndex(level)] = limit;
+                } else {
+                    loggerLimits.put(key, limit);
+                }
+            }
+        }
+        for (int i = 0; i < LEVELS; ++i) {
+            if (levelLimits[i] == null) {
+                levelLimits[i] = defaultLimit;
+            }
+        }
+        boolean any = !loggerLimits.isEmpty();
+        for (Limit limit : levelLimits) {
+            any |= limit != null;
+        }
+        this.rateLimited = any;
+    }
+
+    /**
+     * Decide whether an event should be queued.
+     *
+     * @return False if the event is a duplicate or over its rate limit.
+     */
+    boolean accept(LoggingEvent event) {
+        long now = event.getTimeStamp();
+        if (duplicates != null && isDuplicate(event, now)) {
+            metrics.recordSuppressed();
+            return false;
+        }
+        if (rateLimited) {
+            TokenBucket bucket = bucketsFor(event.getLoggerName(), now)[levelIndex(event.getLevel())];
+            if (bucket != null && !bucket.tryAcquire(now * 1000L)) {
+                metrics.recordRateLimited();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Emit a summary event for each duplicate window that has closed with suppressed
+     * events. Called periodically from the flushing thread.
+     */
+    void drainSummaries(long now, Consumer<LoggingEvent> out) {
+        if (duplicates == null) {
+            return;
+        }
+        Duplicate duplicate;
+        while ((duplicate = evicted.poll()) != null) {
+            summarize(duplicate, now, out);
+        }
+        for (int i = 0; i < TABLE_SIZE; ++i) {
+            duplicate = duplicates.get(i);
+            if (duplicate != null && now >= duplicate.windowEnd && duplicate.suppressed.get() > 0) {
+                summarize(duplicate, now, out);
+            }
+        }
+    }
+
+    private void summarize(Duplicate duplicate, long now, Consumer<LoggingEvent> out) {
+        int count = duplicate.suppressed.getAndSet(0);
+        if (count > 0) {
+            String message = "Suppressed " + count + " duplicate" + (count == 1 ? "" : "s") + " of \""
+                    + duplicate.template + "\""
+                    + (duplicate.throwableType != null ? " (" + duplicate.throwableType.getName() + ")" : "")
+                    + " within " + duplicateWindow + "ms";
+            out.accept(new LoggingEvent(FQCN, Logger.getLogger(duplicate.loggerName), now,
+                    duplicate.level, message, null));
+        }
+    }
+
+    private boolean isDuplicate(LoggingEvent event, long now) {
+        String loggerName = event.getLoggerName();
+        Object template = event.getMessage();
+        if (!(template instanceof String)) {
+            template = event.getRenderedMessage();
+        }
+        ThrowableInformation info = event.getThrowableInformation();
+        Class<?> throwableType = info == null || info.getThrowable() == null ? null : info.getThrowable().getClass();
+
+        int hash = loggerName.hashCode() * 31 + (template == null ? 0 : template.hashCode());
+        if (throwableType != null) {
+            hash = hash * 31 + throwableType.hashCode();
+        }
+        hash ^= hash >>> 16;
+        int slot = hash & (TABLE_SIZE - 1);
+
+        for (;;) {
+            Duplicate current = duplicates.get(slot);
+            if (current != null && now < current.windowEnd && current.matches(loggerName, template, throwableType)) {
+                current.suppressed.incrementAndGet();
+                return true;
+            }
+            if (template == null) {
+                return false;
+            }
+            Duplicate replacement = new Duplicate(loggerName, event.getLevel(), template, throwableType,
+                    now + duplicateWindow);
+            if (duplicates.compareAndSet(slot, current, replacement)) {
+                if (current != null && current.suppressed.get() > 0) {
+                    evicted.add(current);
+                }
+                return false;
+            }
+        }
+    }
+
+    private TokenBucket[] bucketsFor(String loggerName, long now) {
+        TokenBucket[] result = buckets.get(loggerName);
+        if (result == null) {
+            result = buckets.computeIfAbsent(loggerName, name -> {
+                Limit loggerLimit = findLoggerLimit(name);
+                TokenBucket[] created = new TokenBucket[LEVELS];
+                for (int i = 0; i < LEVELS; ++i) {
+                    Limit limit = loggerLimit != null ? loggerLimit : levelLimits[i];
+                    if (limit != null) {
+                        created[i] = new TokenBucket(limit.rate, limit.burst, now * 1000L);
+                    }
+                }
+                return created;
+            });
+        }
+        return result;
+    }
+
+    private Limit findLoggerLimit(String loggerName) {
+        String name = loggerName;
+        while (name != null) {
+            Limit limit = loggerLimits.get(name);
+            if (limit != null) {
+                return limit;
+            }
+            int dot = name.lastIndexOf('.');
+            name = dot < 0 ? null : name.substring(0, dot);
+        }
+        return null;
+    }
+
+    /**
+     * Map TRACE..FATAL onto 0..5.
+     */
+    private static int levelIndex(Level level) {
+        int index = level.toInt() / 10000;
+        return index < 0 ? 0 : (index >= LEVELS ? LEVELS - 1 : index);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non-negative longs. Each power of two is split into four
+ * buckets so percentiles are accurate to within 25%, which is plenty for spotting a
+ * flush that is falling behind. Recording is a handful of atomic adds.
+ */
+final class Histogram {
+
+    private static final int SUB_BUCKETS = 4;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(SUB_BUCKETS + 62 * SUB_BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getSum() {
+        return sum.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.get();
+        return n == 0 ? 0.0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @param percentile A value in [0, 100].
+     * @return The upper bound of the bucket containing the percentile, or zero if empty.
+     */
+    long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); ++i) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + 2;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long bound = ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+        return bound < 0 ? Long.MAX_VALUE : bound;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent events in memory. Intended for tests and benchmarks. With a
+ * capacity of zero nothing is retained and the sink only counts what it receives.
+ */
+public class InMemoryLogSink implements LogSink {
+
+    private final EncodedLogEvent[] ring;
+
+    private int next;
+
+    private int size;
+
+    private final AtomicLong eventCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * @param capacity The maximum number of events retained.
+     */
+    public InMemoryLogSink(int capacity) {
+        this.ring = new EncodedLogEvent[capacity];
+    }
+
+    @Override
+    public void open(String logGroupName, String logStreamName) {
+    }
+
+    @Override
+    public void send(List<EncodedLogEvent> events) {
+        if (ring.length > 0) {
+            synchronized (ring) {
+                for (int i = 0; i < events.size(); ++i) {
+                    EncodedLogEvent event = events.get(i);
+                    ring[next] = new EncodedLogEvent(event.getTimestamp(), event.getMessage());
+                    next = (next + 1) % ring.length;
+                    size = Math.min(size + 1, ring.length);
+                }
+            }
+        }
+        eventCount.addAndGet(events.size());
+        batchCount.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return The retained events, oldest first.
+     */
+    public List<EncodedLogEvent> getEvents() {
+        synchronized (ring) {
+            List<EncodedLogEvent> events = new ArrayList<>(size);
+            int start = (next - size + ring.length) % Math.max(ring.length, 1);
+            for (int i = 0; i < size; ++i) {
+                events.add(ring[(start + i) % ring.length]);
+            }
+            return events;
+        }
+    }
+
+    /**
+     * @return The total number of events received, including those no longer retained.
+     */
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    /**
+     * @return The number of batches received.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Forget all retained events and reset the counters.
+     */
+    public void clear() {
+        synchronized (ring) {
+            for (int i = 0; i < ring.length; ++i) {
+                ring[i] = null;
+            }
+            next = 0;
+            size = 0;
+        }
+        eventCount.set(0);
+        batchCount.set(0);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes events as a single line of compact JSON, for example:
+ * <pre>
+ * {"timestamp":1505779200000,"level":"WARN","logger":"ai.marbles.grpc.ServiceConnector",
+ *  "thread":"main","message":"RPC failed","exception":"io.grpc.StatusRuntimeException: ..."}
+ * </pre>
+ * The {@code ndc}, {@code mdc} and {@code exception} members are only present when the
+ * event carries them. Characters are escaped straight into the caller's buffer so no
+ * intermediate strings are built.
+ */
+public class JsonLogEventEncoder implements LogEventEncoder {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @Override
+    public void encode(LoggingEvent event, StringBuilder out) {
+        out.append("{\"timestamp\":").append(event.getTimeStamp());
+        out.append(",\"level\":\"").append(event.getLevel().toString()).append('"');
+        appendMember(out, "logger", event.getLoggerName());
+        appendMember(out, "thread", event.getThreadName());
+        appendMember(out, "message", event.getRenderedMessage());
+
+        String ndc = event.getNDC();
+        if (ndc != null) {
+            appendMember(out, "ndc", ndc);
+        }
+
+        Map<?, ?> mdc = event.getProperties();
+        if (mdc != null && !mdc.isEmpty()) {
+            out.append(",\"mdc\":{");
+            Iterator<? extends Map.Entry<?, ?>> it = mdc.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<?, ?> entry = it.next();
+                appendString(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                appendString(out, String.valueOf(entry.getValue()));
+                if (it.hasNext()) {
+                    out.append(',');
+                }
+            }
+            out.append('}');
+        }
+
+        String[] throwable = event.getThrowableStrRep();
+        if (throwable != null && throwable.length > 0) {
+            out.append(",\"exception\":\"");
+            for (int i = 0; i < throwable.length; ++i) {
+                if (i > 0) {
+                    out.append("\\n");
+                }
+                appendEscaped(out, throwable[i]);
+            }
+            out.append('"');
+        }
+        out.append('}');
+    }
+
+    private static void appendMember(StringBuilder out, String name, String value) {
+        out.append(",\"").append(name).append("\":");
+        if (value == null) {
+            out.append("null");
+        } else {
+            appendString(out, value);
+        }
+    }
+
+    static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        appendEscaped(out, value);
+        out.append('"');
+    }
+
+    private static void appendEscaped(StringBuilder out, String value) {
+        for (int i = 0, n = value.length(); i < n; ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+}
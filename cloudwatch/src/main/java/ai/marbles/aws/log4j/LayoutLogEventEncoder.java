@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Encodes events through the log4j {@link Layout} configured on the appender.
+ */
+public class LayoutLogEventEncoder implements LogEventEncoder {
+
+    private final Layout layout;
+
+    public LayoutLogEventEncoder(Layout layout) {
+        this.layout = layout;
+    }
+
+    @Override
+    public void encode(LoggingEvent event, StringBuilder out) {
+        out.append(layout.format(event));
+    }
+
+    @Override
+    public String format(LoggingEvent event, StringBuilder scratch) {
+        return layout.format(event);
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Renders a logging event into a character buffer owned by the caller.
+ * Implementations must be thread safe since the same encoder is shared by
+ * every thread appending to a {@link CloudwatchAppender}.
+ */
+public interface LogEventEncoder {
+
+    /**
+     * Append the text representation of {@code event} to {@code out}.
+     *
+     * @param event The event to encode.
+     * @param out   The destination buffer. It is not cleared by the encoder.
+     */
+    void encode(LoggingEvent event, StringBuilder out);
+
+    /**
+     * @param scratch A buffer owned by the caller, which the encoder may clear and use.
+     * @return The text representation of {@code event} as a new string.
+     */
+    default String format(LoggingEvent event, StringBuilder scratch) {
+        scratch.setLength(0);
+        encode(event, scratch);
+        return scratch.toString();
+    }
+}
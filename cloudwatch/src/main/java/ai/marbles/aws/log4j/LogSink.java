@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.util.List;
+
+/**
+ * Destination for the batches flushed by {@link CloudwatchAppender}. Batches are
+ * delivered from a single flushing thread, so implementations need not be thread safe
+ * with respect to {@link #send}.
+ */
+public interface LogSink {
+
+    /**
+     * Prepare the sink. Called while log4j is being configured, so this must not block
+     * on remote services; do that in {@link #connect}.
+     *
+     * @param logGroupName  The log group name.
+     * @param logStreamName The log stream name.
+     */
+    void open(String logGroupName, String logStreamName) throws Exception;
+
+    /**
+     * Create any remote resources the sink needs. Called on the flushing thread before
+     * the first batch, outside any appender lock, and called again with a growing delay
+     * until it succeeds. Implementations must not log through log4j here, the calling
+     * appender may be one of the logger's appenders.
+     */
+    default void connect() throws Exception {
+    }
+
+    /**
+     * Deliver a batch. The list and the events in it are reused by the caller once
+     * this method returns, so implementations must not keep references to them.
+     *
+     * @param events The batch, in queue order. Never empty.
+     * @throws IllegalStateException If {@link #connect} has not succeeded.
+     */
+    void send(List<EncodedLogEvent> events) throws Exception;
+
+    /**
+     * @return True if the sink reads messages with {@link EncodedLogEvent#getMessageAsString}.
+     *         Events encoded on the logging thread are then queued as strings rather
+     *         than UTF-8 bytes, so they are not decoded again for every batch.
+     */
+    default boolean acceptsText() {
+        return false;
+    }
+
+    /**
+     * Receive the appender's metrics so retries and throttling can be reported.
+     * Called before {@link #open}.
+     */
+    default void setMetrics(AppenderMetrics metrics) {
+    }
+
+    /**
+     * Release resources. No further batches are sent after this call.
+     */
+    void close();
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes batches to a local file, one message per line. When the file exceeds
+ * {@code maxFileSize} it is rolled over in the same way as log4j's RollingFileAppender:
+ * {@code file} becomes {@code file.1}, {@code file.1} becomes {@code file.2} and so on,
+ * keeping at most {@code maxBackupIndex} backups.
+ */
+public class RollingFileLogSink implements LogSink {
+
+    private final File file;
+
+    private final long maxFileSize;
+
+    private final int maxBackupIndex;
+
+    private OutputStream out;
+
+    private long fileSize;
+
+    /**
+     * @param fileName          The file to write.
+     * @param maxFileSize       Roll over once the file reaches this many bytes.
+     * @param maxBackupIndex    The number of backups to keep. Zero truncates on roll over.
+     */
+    public RollingFileLogSink(String fileName, long maxFileSize, int maxBackupIndex) {
+        this.file = new File(fileName);
+        this.maxFileSize = maxFileSize;
+        this.maxBackupIndex = maxBackupIndex;
+    }
+
+    @Override
+    public void open(String logGroupName, String logStreamName) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        openFile(true);
+    }
+
+    @Override
+    public void send(List<EncodedLogEvent> events) throws IOException {
+        for (int i = 0; i < events.size(); ++i) {
+            byte[] message = events.get(i).getMessage();
+            out.write(message);
+            fileSize += message.length;
+            if (message.length == 0 || message[message.length - 1] != '\n') {
+                out.write('\n');
+                ++fileSize;
+            }
+        }
+        out.flush();
+        if (fileSize >= maxFileSize) {
+            rollOver();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // nothing useful to do while closing
+            }
+            out = null;
+        }
+    }
+
+    private void openFile(boolean append) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file, append), 64 * 1024);
+        fileSize = append ? file.length() : 0;
+    }
+
+    private void rollOver() throws IOException {
+        close();
+        if (maxBackupIndex > 0) {
+            File oldest = new File(file.getPath() + '.' + maxBackupIndex);
+            if (oldest.exists()) {
+                oldest.delete();
+            }
+            for (int i = maxBackupIndex - 1; i >= 1; --i) {
+                File backup = new File(file.getPath() + '.' + i);
+                if (backup.exists()) {
+                    backup.renameTo(new File(file.getPath() + '.' + (i + 1)));
+                }
+            }
+            file.renameTo(new File(file.getPath() + ".1"));
+        }
+        openFile(false);
+    }
+}
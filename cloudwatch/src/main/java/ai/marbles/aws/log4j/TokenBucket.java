@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket implemented as a generic cell rate algorithm: the only
+ * state is the theoretical arrival time of the next token, so acquiring is one
+ * compare-and-set. Times are in microseconds and supplied by the caller.
+ */
+final class TokenBucket {
+
+    private final long intervalMicros;
+
+    private final long toleranceMicros;
+
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param ratePerSecond Sustained rate in tokens per second. Zero denies every request.
+     * @param burst         Tokens that may be taken at once after an idle period.
+     * @param nowMicros     The current time.
+     */
+    TokenBucket(double ratePerSecond, int burst, long nowMicros) {
+        if (!(ratePerSecond >= 0)) {
+            throw new IllegalArgumentException("Rate must not be negative: " + ratePerSecond);
+        }
+        if (ratePerSecond == 0) {
+            // The interval would be infinite and overflow the arrival time. A negative
+            // tolerance makes every acquire fail instead.
+            this.intervalMicros = 0;
+            this.toleranceMicros = -1;
+        } else {
+            this.intervalMicros = Math.max(1L, (long) (1000000.0 / ratePerSecond));
+            this.toleranceMicros = intervalMicros * Math.max(1, burst);
+        }
+        this.theoreticalArrival = new AtomicLong(nowMicros);
+    }
+
+    boolean tryAcquire(long nowMicros) {
+        for (;;) {
+            long arrival = theoreticalArrival.get();
+            long next = (arrival - nowMicros > 0 ? arrival : nowMicros) + intervalMicros;
+            if (next - nowMicros > toleranceMicros) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+}
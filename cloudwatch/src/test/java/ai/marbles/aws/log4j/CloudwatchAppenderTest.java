@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class CloudwatchAppenderTest {
+	private static final Logger logger = Logger.getLogger(CloudwatchAppenderTest.class);
+
+	private static LoggingEvent event(String message) {
+		return new LoggingEvent(Logger.class.getName(), logger, Level.INFO, message, null);
+	}
+
+	/**
+	 * @return True if {@code condition} became true within a generous timeout.
+	 */
+	private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	/**
+	 * Run {@code task} on a new thread.
+	 *
+	 * @return True if it finished within a generous timeout.
+	 */
+	private static boolean completes(Runnable task) throws InterruptedException {
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		thread.start();
+		thread.join(30000);
+		return !thread.isAlive();
+	}
+
+	@Test
+	public void testJsonEncodingWithMemorySink() {
+		CloudwatchAppender appender = new CloudwatchAppender();
+		appender.setLogGroupName("group");
+		appender.setLogStreamName("stream");
+		appender.setEncoding(CloudwatchAppender.ENCODING_JSON);
+		appender.setSink(CloudwatchAppender.SINK_MEMORY);
+		appender.activateOptions();
+
+		for (int i = 0; i < 10; ++i) {
+			appender.doAppend(event("message \"" + i + "\""));
+		}
+		appender.close();
+
+		InMemoryLogSink sink = (InMemoryLogSink) appender.getLogSink();
+		List<EncodedLogEvent> events = sink.getEvents();
+		assertEquals(10, events.size());
+		assertTrue(events.get(3).getMessageAsString().contains("\"message\":\"message \\\"3\\\"\""));
+		assertTrue(events.get(3).getMessageAsString().contains("\"level\":\"INFO\""));
+
+		AppenderMetrics metrics = appender.getMetrics();
+		assertEquals(10, metrics.getEnqueuedEvents());
+		assertEquals(0, metrics.getDroppedEvents());
+		assertEquals(10, (long) (metrics.getBatchEventsMean() * metrics.getBatches()));
+	}
+
+	@Test
+	public void testDuplicateSuppressionAndRateLimit() {
+		CloudwatchAppender appender = new CloudwatchAppender();
+		appender.setLayout(new PatternLayout("%m"));
+		appender.setLogGroupName("group");
+		appender.setLogStreamName("stream");
+		appender.setSink(CloudwatchAppender.SINK_MEMORY);
+		appender.setRateLimits("INFO=10");
+		appender.setDuplicateWindow(1000);
+		appender.activateOptions();
+
+		long now = System.currentTimeMillis();
+		RuntimeException failure = new RuntimeException("boom");
+		for (int i = 0; i < 100; ++i) {
+			appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, now, Level.WARN, "RPC failed", failure));
+		}
+		for (int i = 0; i < 50; ++i) {
+			appender.doAppend(new LoggingEvent(Logger.class.getName(), logger, now, Level.INFO, "message " + i, null));
+		}
+		appender.close();
+
+		AppenderMetrics metrics = appender.getMetrics();
+		assertEquals(99, metrics.getSuppressedDuplicates());
+		assertEquals(40, metrics.getRateLimitedEvents());
+
+		List<EncodedLogEvent> events = ((InMemoryLogSink) appender.getLogSink()).getEvents();
+		assertEquals(1 + 10 + 1, events.size());
+		assertTrue(events.get(11).getMessageAsString().startsWith("Suppressed 99 duplicates of \"RPC failed\" (java.lang.RuntimeException)"));
+	}
+
+	@Test
+	public void testZeroAndInvalidRateLimits() {
+		CloudwatchAppender appender = new CloudwatchAppender();
+		appender.setLayout(new PatternLayout("%m"));
+		appender.setLogGroupName("group");
+		appender.setLogStreamName("stream");
+		appender.setSink(CloudwatchAppender.SINK_MEMORY);
+		appender.setRateLimits("INFO=0");
+		appender.activateOptions();
+		for (int i = 0; i < 50; ++i) {
+			appender.doAppend(event("message " + i));
+		}
+		appender.close();
+		assertEquals(50, appender.getMetrics().getRateLimitedEvents());
+		assertEquals(0, ((InMemoryLogSink) appender.getLogSink()).getEvents().size());
+
+		// A bad specification is reported and leaves the appender inactive, it must not
+		// abort the rest of the log4j configuration.
+		for (String rateLimits : new String[] { "INFO=-1", "INFO=ten" }) {
+			appender = new CloudwatchAppender();
+			appender.setLayout(new PatternLayout("%m"));
+			appender.setLogGroupName("group");
+			appender.setLogStreamName("stream");
+			appender.setSink(CloudwatchAppender.SINK_MEMORY);
+			appender.setRateLimits(rateLimits);
+			appender.activateOptions();
+			appender.doAppend(event("message"));
+			appender.close();
+			assertEquals(0, appender.getMetrics().getEnqueuedEvents());
+		}
+	}
+
+	@Test
+	public void testSummariesWithLayoutEncodingAndConcurrentLogging() throws Exception {
+		final int threads = 4;
+		final int eventsPerThread = 20000;
+		CloudwatchAppender appender = new CloudwatchAppender();
+		appender.setLayout(new PatternLayout("%p [%t] %m%n"));
+		appender.setLogGroupName("group");
+		appender.setLogStreamName("stream");
+		appender.setEncoding(CloudwatchAppender.ENCODING_LAYOUT);
+		appender.setSink(CloudwatchAppender.SINK_MEMORY);
+		appender.setQueueLength(2 * threads * eventsPerThread);
+		appender.setDuplicateWindow(1);
+		appender.activateOptions();
+
+		// The flushing thread formats summaries with the shared layout while these
+		// threads format their own events with it.
+		List<Thread> producers = new ArrayList<>();
+		for (int t = 0; t < threads; ++t) {
+			final int thread = t;
+			Thread producer = new Thread(() -> {
+				for (int i = 0; i < eventsPerThread; ++i) {
+					appender.doAppend(event(i % 2 == 0 ? "repeated " + thread + "-" + i % 100 : "message " + thread + "-" + i));
+				}
+			}, "producer-" + t);
+			producer.start();
+			producers.add(producer);
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		appender.close();
+
+		AppenderMetrics metrics = appender.getMetrics();
+		assertEquals(0, metrics.getDroppedEvents());
+		List<EncodedLogEvent> events = ((InMemoryLogSink) appender.getLogSink()).getEvents();
+		assertEquals(metrics.getEnqueuedEvents(), events.size());
+		int summaries = 0;
+		for (EncodedLogEvent event : events) {
+			String message = event.getMessageAsString();
+			if (message.contains("] Suppressed ")) {
+				assertTrue(message, message.matches("INFO \\[[^]]+\\] Suppressed \\d+ duplicates? of \"repeated \\d-\\d+\" within 1ms\n"));
+				++summaries;
+			} else {
+				assertTrue(message, message.matches("INFO \\[producer-\\d\\] (repeated|message) \\d-\\d+\n"));
+			}
+		}
+		assertTrue(summaries > 0);
+	}
+
+	@Test
+	public void testCloudwatchSinkAgainstFakeServer() throws Exception {
+		System.setProperty("aws.accessKeyId", "fake");
+		System.setProperty("aws.secretKey", "fake");
+		FakeCloudwatchLogsServer server = new FakeCloudwatchLogsServer(0).start();
+		try {
+			for (int round = 0; round < 2; ++round) {
+				// The second round reopens an existing stream and must pick up its sequence token.
+				CloudwatchAppender appender = new CloudwatchAppender(new PatternLayout("%m"), "group", "stream",
+						new CloudwatchLogSink(server.getEndpoint(), "us-east-1"));
+				for (int i = 0; i < 5; ++i) {
+					appender.doAppend(event("round " + round + " message " + i));
+				}
+				appender.close();
+			}
+			List<String> messages = server.getMessages("group", "stream");
+			assertEquals(10, messages.size());
+			assertEquals("round 1 message 4", messages.get(9));
+			assertEquals(0, server.getInvalidSequenceTokenRequests());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testLoadAgainstFakeServer() throws Exception {
+		final int threads = 4;
+		final int eventsPerThread = 2500;
+		System.setProperty("aws.accessKeyId", "fake");
+		System.setProperty("aws.secretKey", "fake");
+		FakeCloudwatchLogsServer server = new FakeCloudwatchLogsServer(0).setLatencyMillis(5).start();
+		try {
+			List<CloudwatchAppender> appenders = new ArrayList<>();
+			for (String name : new String[] { "load-a", "load-b" }) {
+				CloudwatchAppender appender = new CloudwatchAppender();
+				appender.setName(name);
+				appender.setLayout(new PatternLayout("%t %m"));
+				appender.setLogGroupName("group");
+				appender.setLogStreamName(name);
+				appender.setEndpoint(server.getEndpoint());
+				appender.setRegion("us-east-1");
+				appender.setQueueLength(threads * eventsPerThread);
+				appender.activateOptions();
+				appenders.add(appender);
+				assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+						new ObjectName("ai.marbles.aws.log4j:type=CloudwatchAppender,name=" + ObjectName.quote(name))));
+			}
+
+			List<Thread> producers = new ArrayList<>();
+			for (int t = 0; t < threads; ++t) {
+				Thread producer = new Thread(() -> {
+					for (int i = 0; i < eventsPerThread; ++i) {
+						LoggingEvent event = event("message " + i);
+						for (CloudwatchAppender appender : appenders) {
+							appender.doAppend(event);
+						}
+					}
+				});
+				producer.start();
+				producers.add(producer);
+			}
+			for (Thread producer : producers) {
+				producer.join();
+			}
+
+			for (CloudwatchAppender appender : appenders) {
+				appender.close();
+				AppenderMetrics metrics = appender.getMetrics();
+				assertEquals(threads * eventsPerThread, metrics.getEnqueuedEvents());
+				assertEquals(0, metrics.getDroppedEvents());
+				assertEquals(0, metrics.getFailedBatches());
+				assertEquals(threads * eventsPerThread, server.getMessages("group", appender.getName()).size());
+			}
+			assertEquals(2 * threads * eventsPerThread, server.getAcceptedEvents());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRetriesAgainstFakeServer() throws Exception {
+		final int total = 2000;
+		System.setProperty("aws.accessKeyId", "fake");
+		System.setProperty("aws.secretKey", "fake");
+		FakeCloudwatchLogsServer server = new FakeCloudwatchLogsServer(0)
+				.setThrottleRate(0.2)
+				.setInvalidSequenceTokenRate(0.2)
+				.start();
+		try {
+			CloudwatchAppender appender = new CloudwatchAppender();
+			appender.setName("retries");
+			appender.setLayout(new PatternLayout("%m"));
+			appender.setLogGroupName("group");
+			appender.setLogStreamName("retries");
+			appender.setEndpoint(server.getEndpoint());
+			appender.setRegion("us-east-1");
+			appender.setQueueLength(total);
+			appender.setMessagesBatchSize(50);
+			appender.activateOptions();
+			for (int i = 0; i < total; ++i) {
+				appender.doAppend(event("message " + i));
+			}
+
+			// While a batch is being sent, logging threads must not wait for it.
+			assertTrue(eventually(() -> server.getPutRequests() > 0));
+			server.hold();
+			appender.doAppend(event("held"));
+			assertTrue(server.awaitHeldRequest(30, TimeUnit.SECONDS));
+			assertTrue(completes(() -> {
+				for (int i = 0; i < 100; ++i) {
+					appender.doAppend(event("while held " + i));
+				}
+			}));
+			server.release();
+			appender.close();
+
+			AppenderMetrics metrics = appender.getMetrics();
+			assertTrue(metrics.getThrottles() > 0);
+			assertEquals(server.getThrottledRequests(), metrics.getThrottles());
+			assertTrue(server.getInvalidSequenceTokenRequests() > 0);
+			assertTrue(metrics.getRetries() > 0);
+			// Every PutLogEvents request is either the first attempt of a batch or a retry.
+			assertEquals(server.getPutRequests(), metrics.getBatches() + metrics.getFailedBatches() + metrics.getRetries());
+			assertEquals(total + 101, server.getAcceptedEvents() + metrics.getDroppedEvents());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testUnreachableCloudwatchDoesNotBlockLogging() throws Exception {
+		System.setProperty("aws.accessKeyId", "fake");
+		System.setProperty("aws.secretKey", "fake");
+		String endpoint;
+		try (ServerSocket closed = new ServerSocket(0)) {
+			endpoint = "http://localhost:" + closed.getLocalPort();
+		}
+
+		CloudwatchAppender appender = new CloudwatchAppender();
+		appender.setName("unreachable");
+		appender.setLayout(new PatternLayout("%m"));
+		appender.setLogGroupName("group");
+		appender.setLogStreamName("unreachable");
+		appender.setEndpoint(endpoint);
+		appender.setRegion("us-east-1");
+		appender.activateOptions();
+		Logger unreachable = Logger.getLogger("unreachable");
+		unreachable.setAdditivity(false);
+		unreachable.addAppender(appender);
+		try {
+			assertTrue(completes(() -> {
+				for (int i = 0; i < 100; ++i) {
+					unreachable.info("message " + i);
+				}
+			}));
+		} finally {
+			unreachable.removeAppender(appender);
+		}
+		appender.close();
+
+		AppenderMetrics metrics = appender.getMetrics();
+		assertEquals(100, metrics.getEnqueuedEvents());
+		assertEquals(100, metrics.getDroppedEvents());
+		assertEquals(0, metrics.getBatches());
+	}
+
+	@Test
+	public void testSlowCloudwatchDoesNotBlockLogging() throws Exception {
+		System.setProperty("aws.accessKeyId", "fake");
+		System.setProperty("aws.secretKey", "fake");
+		FakeCloudwatchLogsServer server = new FakeCloudwatchLogsServer(0).hold().start();
+		try {
+			CloudwatchAppender appender = new CloudwatchAppender("slow", new PatternLayout("%m"), "group", "slow",
+					new CloudwatchLogSink(server.getEndpoint(), "us-east-1"));
+			// The flushing thread is now stuck connecting.
+			assertTrue(server.awaitHeldRequest(30, TimeUnit.SECONDS));
+			Logger slow = Logger.getLogger("slow");
+			slow.setAdditivity(false);
+			slow.addAppender(appender);
+			try {
+				assertTrue(completes(() -> {
+					for (int i = 0; i < 100; ++i) {
+						slow.info("message " + i);
+					}
+				}));
+			} finally {
+				slow.removeAppender(appender);
+			}
+			assertEquals(100, appender.getMetrics().getEnqueuedEvents());
+			assertEquals(0, server.getPutRequests());
+			server.release();
+			appender.close();
+			assertEquals(100, server.getMessages("group", "slow").size());
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.aws.log4j;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the Cloudwatch Logs service. It speaks the subset of the JSON
+ * protocol used by {@link CloudwatchLogSink} (DescribeLogGroups, CreateLogGroup,
+ * DescribeLogStreams, CreateLogStream and PutLogEvents) and can inject latency,
+ * throttling and sequence token errors so the appender can be load tested offline.
+ * Requests can also be held indefinitely, to check what waits for the service.
+ *
+ * <p>Point a sink at it with {@code new CloudwatchLogSink(server.getEndpoint(), "us-east-1")}.
+ * Any credentials are accepted.</p>
+ *
+ * <p>Run standalone with {@code FakeCloudwatchLogsServer [port]}.</p>
+ */
+public class FakeCloudwatchLogsServer {
+
+    private static final String TARGET_PREFIX = "Logs_20140328.";
+
+    private static final String CONTENT_TYPE = "application/x-amz-json-1.1";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final Map<String, Map<String, LogStream>> logGroups = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+
+    private volatile double throttleRate;
+
+    private volatile double invalidSequenceTokenRate;
+
+    private volatile int retainLimit = 100000;
+
+    private volatile CountDownLatch gate;
+
+    private final Semaphore heldRequests = new Semaphore(0);
+
+    private final AtomicLong putRequests = new AtomicLong();
+
+    private final AtomicLong throttledRequests = new AtomicLong();
+
+    private final AtomicLong invalidSequenceTokenRequests = new AtomicLong();
+
+    private final AtomicLong acceptedEvents = new AtomicLong();
+
+    private static final class LogStream {
+        long sequence;
+        final List<String> messages = new ArrayList<>();
+    }
+
+    /**
+     * Create a server on {@code port}. Use zero to pick a free port.
+     */
+    public FakeCloudwatchLogsServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "FakeCloudwatchLogsServer");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public FakeCloudwatchLogsServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        release();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return The endpoint URL to configure clients with.
+     */
+    public String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Delay every response by {@code latencyMillis}.
+     */
+    public FakeCloudwatchLogsServer setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * Reject this fraction of PutLogEvents requests with a ThrottlingException.
+     */
+    public FakeCloudwatchLogsServer setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * Reject this fraction of PutLogEvents requests with an InvalidSequenceTokenException,
+     * even when the token is correct.
+     */
+    public FakeCloudwatchLogsServer setInvalidSequenceTokenRate(double invalidSequenceTokenRate) {
+        this.invalidSequenceTokenRate = invalidSequenceTokenRate;
+        return this;
+    }
+
+    /**
+     * Hold every request until {@link #release} is called.
+     */
+    public FakeCloudwatchLogsServer hold() {
+        gate = new CountDownLatch(1);
+        return this;
+    }
+
+    /**
+     * Let held requests, and any that follow, through.
+     */
+    public void release() {
+        CountDownLatch held = gate;
+        gate = null;
+        if (held != null) {
+            held.countDown();
+        }
+    }
+
+    /**
+     * Wait until a request is being held.
+     *
+     * @return False if no request arrived within the timeout.
+     */
+    public boolean awaitHeldRequest(long timeout, TimeUnit unit) throws InterruptedException {
+        return heldRequests.tryAcquire(timeout, unit);
+    }
+
+    /**
+     * Keep at most this many messages per stream. Use zero for load tests.
+     */
+    public FakeCloudwatchLogsServer setRetainLimit(int retainLimit) {
+        this.retainLimit = retainLimit;
+        return this;
+    }
+
+    /**
+     * @return The messages accepted for a stream, oldest first.
+     */
+    public List<String> getMessages(String logGroupName, String logStreamName) {
+        LogStream stream = findStream(logGroupName, logStreamName);
+        if (stream == null) {
+            return new ArrayList<>();
+        }
+        synchronized (stream) {
+            return new ArrayList<>(stream.messages);
+        }
+    }
+
+    public long getPutRequests() {
+        return putRequests.get();
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.get();
+    }
+
+    public long getInvalidSequenceTokenRequests() {
+        return invalidSequenceTokenRequests.get();
+    }
+
+    public long getAcceptedEvents() {
+        return acceptedEvents.get();
+    }
+
+    private LogStream findStream(String logGroupName, String logStreamName) {
+        Map<String, LogStream> streams = logGroups.get(logGroupName);
+        return streams == null ? null : streams.get(logStreamName);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            CountDownLatch held = gate;
+            if (held != null) {
+                heldRequests.release();
+                held.await();
+            }
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            JsonNode request;
+            try (InputStream in = exchange.getRequestBody()) {
+                request = mapper.readTree(in);
+            }
+            String operation = target == null ? "" : target.substring(target.indexOf('.') + 1);
+            if (target == null || !target.startsWith(TARGET_PREFIX)) {
+                sendError(exchange, "UnknownOperationException", "Unknown target " + target, null);
+                return;
+            }
+            switch (operation) {
+                case "DescribeLogGroups":
+                    describeLogGroups(exchange, request);
+                    break;
+                case "CreateLogGroup":
+                    createLogGroup(exchange, request);
+                    break;
+                case "DescribeLogStreams":
+                    describeLogStreams(exchange, request);
+                    break;
+                case "CreateLogStream":
+                    createLogStream(exchange, request);
+                    break;
+                case "PutLogEvents":
+                    putLogEvents(exchange, request);
+                    break;
+                default:
+                    sendError(exchange, "UnknownOperationException", "Unsupported operation " + operation, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void describeLogGroups(HttpExchange exchange, JsonNode request) throws IOException {
+        String prefix = text(request, "logGroupNamePrefix");
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode groups = response.putArray("logGroups");
+        for (String name : logGroups.keySet()) {
+            if (prefix == null || name.startsWith(prefix)) {
+                groups.addObject().put("logGroupName", name).put("creationTime", 0L);
+            }
+        }
+        send(exchange, response);
+    }
+
+    private void createLogGroup(HttpExchange exchange, JsonNode request) throws IOException {
+        String name = text(request, "logGroupName");
+        if (logGroups.putIfAbsent(name, new ConcurrentHashMap<>()) != null) {
+            sendError(exchange, "ResourceAlreadyExistsException", "The specified log group already exists", null);
+        } else {
+            send(exchange, mapper.createObjectNode());
+        }
+    }
+
+    private void describeLogStreams(HttpExchange exchange, JsonNode request) throws IOException {
+        Map<String, LogStream> streams = logGroups.get(text(request, "logGroupName"));
+        if (streams == null) {
+            sendError(exchange, "ResourceNotFoundException", "The specified log group does not exist.", null);
+            return;
+        }
+        String prefix = text(request, "logStreamNamePrefix");
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode array = response.putArray("logStreams");
+        for (Map.Entry<String, LogStream> entry : streams.entrySet()) {
+            if (prefix == null || entry.getKey().startsWith(prefix)) {
+                ObjectNode node = array.addObject().put("logStreamName", entry.getKey());
+                synchronized (entry.getValue()) {
+                    if (entry.getValue().sequence > 0) {
+                        node.put("uploadSequenceToken", Long.toString(entry.getValue().sequence));
+                    }
+                }
+            }
+        }
+        send(exchange, response);
+    }
+
+    private void createLogStream(HttpExchange exchange, JsonNode request) throws IOException {
+        Map<String, LogStream> streams = logGroups.get(text(request, "logGroupName"));
+        if (streams == null) {
+            sendError(exchange, "ResourceNotFoundException", "The specified log group does not exist.", null);
+        } else if (streams.putIfAbsent(text(request, "logStreamName"), new LogStream()) != null) {
+            sendError(exchange, "ResourceAlreadyExistsException", "The specified log stream already exists", null);
+        } else {
+            send(exchange, mapper.createObjectNode());
+        }
+    }
+
+    private void putLogEvents(HttpExchange exchange, JsonNode request) throws IOException {
+        putRequests.incrementAndGet();
+        LogStream stream = findStream(text(request, "logGroupName"), text(request, "logStreamName"));
+        if (stream == null) {
+            sendError(exchange, "ResourceNotFoundException", "The specified log stream does not exist.", null);
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (throttleRate > 0 && random.nextDouble() < throttleRate) {
+            throttledRequests.incrementAndGet();
+            sendError(exchange, "ThrottlingException", "Rate exceeded", null);
+            return;
+        }
+        String token = text(request, "sequenceToken");
+        String nextToken;
+        synchronized (stream) {
+            String expected = stream.sequence == 0 ? null : Long.toString(stream.sequence);
+            boolean inject = invalidSequenceTokenRate > 0 && random.nextDouble() < invalidSequenceTokenRate;
+            if (inject || (expected == null ? token != null : !expected.equals(token))) {
+                invalidSequenceTokenRequests.incrementAndGet();
+                sendError(exchange, "InvalidSequenceTokenException",
+                        "The given sequenceToken is invalid. The next expected sequenceToken is: " + expected,
+                        expected);
+                return;
+            }
+            int count = 0;
+            for (JsonNode event : request.path("logEvents")) {
+                if (stream.messages.size() < retainLimit) {
+                    stream.messages.add(event.path("message").asText());
+                }
+                ++count;
+            }
+            acceptedEvents.addAndGet(count);
+            nextToken = Long.toString(++stream.sequence);
+        }
+        send(exchange, mapper.createObjectNode().put("nextSequenceToken", nextToken));
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private void send(HttpExchange exchange, JsonNode body) throws IOException {
+        write(exchange, 200, body);
+    }
+
+    private void sendError(HttpExchange exchange, String type, String message, String expectedSequenceToken) throws IOException {
+        ObjectNode body = mapper.createObjectNode().put("__type", type).put("message", message);
+        if (expectedSequenceToken != null) {
+            body.put("expectedSequenceToken", expectedSequenceToken);
+        }
+        exchange.getResponseHeaders().set("x-amzn-ErrorType", type);
+        write(exchange, 400, body);
+    }
+
+    private void write(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsString(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.getResponseHeaders().set("x-amzn-RequestId", Long.toHexString(System.nanoTime()));
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4586;
+        FakeCloudwatchLogsServer server = new FakeCloudwatchLogsServer(port).setRetainLimit(0).start();
+        System.out.println("Fake Cloudwatch Logs listening on " + server.getEndpoint());
+        Thread.currentThread().join();
+    }
+}
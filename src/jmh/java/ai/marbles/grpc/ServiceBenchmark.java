@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import com.google.protobuf.Empty;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip latency of {@link ServiceConnector} calls through a {@link ServiceAcceptor}.
+ * The {@code inprocess} transport isolates the gRPC and protobuf overhead from the
+ * network stack. The {@code tcp} transport listens on an ephemeral port.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+
+    public static class Handler extends DiscoveryGrpc.DiscoveryImplBase {
+        @Override
+        public void ping(Empty request, StreamObserver<Empty> responseObserver) {
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void configure(Configuration request, StreamObserver<ConfigResult> responseObserver) {
+            responseObserver.onNext(ConfigResult.newBuilder()
+                    .setStatus(ConfigResult.Status.OK).build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Param({"inprocess", "tcp"})
+    public String transport;
+
+    private ServiceAcceptor server;
+    private ServiceConnector client;
+    private Configuration configuration;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if (transport.equals("inprocess")) {
+            String name = "ServiceBenchmark-" + System.nanoTime();
+            server = new ServiceAcceptor(InProcessServerBuilder.forName(name), 0, new Handler());
+            server.start();
+            client = new ServiceConnector(InProcessChannelBuilder.forName(name));
+        } else {
+            server = new ServiceAcceptor(ServerBuilder.forPort(0), 0, new Handler());
+            server.start();
+            client = new ServiceConnector(ManagedChannelBuilder
+                    .forAddress("localhost", server.getServer().getPort()).usePlaintext(true));
+        }
+        configuration = Configuration.newBuilder().build();
+        // Connect before measuring.
+        client.ping(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        client.shutdown().blockUntilShutdown(3000);
+        server.shutdown().blockUntilShutdown(3000);
+    }
+
+    @Benchmark
+    public boolean ping() throws Exception {
+        return client.ping(0);
+    }
+
+    @Benchmark
+    public ConfigResult configure() throws Exception {
+        return client.configure(configuration, 0);
+    }
+}
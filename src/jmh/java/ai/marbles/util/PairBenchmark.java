@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares zipping numeric data through boxed {@link Pair}s with the primitive pairs
+ * and {@link Zip}. Every variant computes the same sum so the results can be checked
+ * against each other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PairBenchmark {
+
+    @Param({"1024", "65536"})
+    public int size;
+
+    private int[] a;
+    private int[] b;
+    private Integer[] boxedA;
+    private Integer[] boxedB;
+    private Pair<Integer, Integer> pair;
+    private IntPair intPair;
+
+    @Setup
+    public void setup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        a = new int[size];
+        b = new int[size];
+        boxedA = new Integer[size];
+        boxedB = new Integer[size];
+        for (int i = 0; i < size; ++i) {
+            a[i] = random.nextInt(1000);
+            b[i] = random.nextInt(1000);
+            boxedA[i] = a[i];
+            boxedB[i] = b[i];
+        }
+        pair = Pair.makePair(1, 2);
+        intPair = IntPair.makePair(1, 2);
+    }
+
+    @Benchmark
+    public long loop() {
+        long sum = 0;
+        for (int i = 0; i < size; ++i) {
+            sum += a[i] + b[i];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long boxedPairList() {
+        List<Pair<Integer, Integer>> pairs = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            pairs.add(Pair.makePair(boxedA[i], boxedB[i]));
+        }
+        long sum = 0;
+        for (Pair<Integer, Integer> p : pairs) {
+            sum += p.getFirst() + p.getSecond();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long boxedPairIterator() {
+        long sum = 0;
+        for (int i = 0; i < size; ++i) {
+            for (Object x : Pair.makePair(boxedA[i], boxedB[i])) {
+                sum += (Integer) x;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long zipBoxedStreams() {
+        return Zip.zip(Arrays.stream(boxedA), Arrays.stream(boxedB), Pair::makePair)
+                .mapToLong(p -> p.getFirst() + p.getSecond())
+                .sum();
+    }
+
+    @Benchmark
+    public long zipIntPairCursor() {
+        return Zip.zip(a, b).mapToLong(p -> p.getFirst() + p.getSecond()).sum();
+    }
+
+    @Benchmark
+    public long zipIntPairCursorParallel() {
+        return Zip.zip(a, b).parallel().mapToLong(p -> p.getFirst() + p.getSecond()).sum();
+    }
+
+    @Benchmark
+    public long zipPacked() {
+        return Zip.zipPacked(a, b).map(p -> PackedIntPair.first(p) + PackedIntPair.second(p)).sum();
+    }
+
+    @Benchmark
+    public Object copyPair() {
+        return pair.copy();
+    }
+
+    @Benchmark
+    public Object clonePair() throws CloneNotSupportedException {
+        return pair.clone();
+    }
+
+    @Benchmark
+    public Object copyIntPair() {
+        return intPair.copy();
+    }
+}
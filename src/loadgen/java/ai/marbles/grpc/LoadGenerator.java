@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import com.google.protobuf.Empty;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Load generator for the Discovery service, run from the command line:
+ * <pre>
+ * java -cp mservice.jar:mservice-loadgen.jar:... ai.marbles.grpc.LoadGenerator --port=9001 --rate=5000 --duration=30
+ * </pre>
+ *
+ * <p>In {@code rate} mode requests are issued open-loop on a fixed schedule, whether or
+ * not earlier requests have completed. Response time is measured from the time a request
+ * was scheduled to be sent rather than when it was actually sent, so stalls in the
+ * service or a full concurrency limit are charged to every request they delayed. This
+ * corrects for coordinated omission. Service time, measured from the actual send, is
+ * reported as well.</p>
+ *
+ * <p>In {@code max} mode each of the {@code concurrency} slots sends its next request as
+ * soon as the previous one completes. There is no schedule so response and service time
+ * are the same; use this mode to find the saturation throughput, then measure latency in
+ * {@code rate} mode below it.</p>
+ *
+ * <p>Failed and timed out requests are recorded in the response and service times like
+ * successful ones, since the client waited for them too, and in a histogram of their
+ * own. Leaving them out would hide exactly the slowest requests. So are requests the
+ * schedule could not send before the end of the run because the concurrency limit was
+ * reached, with the time they had waited as their response time.</p>
+ *
+ * <p>Only requests sent after the warm up are measured, and the warm up requests still in
+ * flight are waited for before the measured part starts.</p>
+ *
+ * <p>Run with {@code --help} for the options.</p>
+ */
+public final class LoadGenerator {
+    private static final Logger logger = LogManager.getLogger(LoadGenerator.class);
+
+    public static final String MODE_RATE = "rate";
+    public static final String MODE_MAX = "max";
+    public static final String METHOD_PING = "ping";
+    public static final String METHOD_CONFIGURE = "configure";
+
+    /**
+     * Command line options. Each option is given as {@code --name=value}.
+     */
+    public static final class Options {
+        String host = "localhost";
+        int port = 0;
+        boolean local = false;
+        String method = METHOD_PING;
+        String mode = MODE_RATE;
+        double rate = 1000;
+        int connections = 1;
+        int concurrency = 100;
+        int payload = 0;
+        long warmup = 5;
+        long duration = 30;
+        long timeout = 10000;
+        String output = null;
+
+        static final String USAGE =
+                "Usage: LoadGenerator [options]\n" +
+                "  --host=HOST          Service host (default localhost)\n" +
+                "  --port=PORT          Service port\n" +
+                "  --local              Start a local ServiceAcceptor on --port (0 picks a free port)\n" +
+                "  --method=METHOD      ping or configure (default ping)\n" +
+                "  --mode=MODE          rate (open-loop) or max (closed-loop) (default rate)\n" +
+                "  --rate=N             Requests per second in rate mode (default 1000)\n" +
+                "  --connections=N      Number of channels (default 1)\n" +
+                "  --concurrency=N      Maximum requests in flight (default 100)\n" +
+                "  --payload=BYTES      Pad configure requests to at least BYTES (default 0)\n" +
+                "  --warmup=SECONDS     Run time discarded before measuring (default 5)\n" +
+                "  --duration=SECONDS   Measured run time (default 30)\n" +
+                "  --timeout=MILLIS     Deadline of each request (default 10000)\n" +
+                "  --output=FILE        Write the summary and percentile distributions to FILE\n";
+
+        /**
+         * Parse command line arguments.
+         *
+         * @param args  The arguments.
+         * @return The options.
+         * @throws IllegalArgumentException If an argument is unknown or invalid.
+         */
+        public static Options parse(String[] args) {
+            Options o = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("unexpected argument " + arg);
+                }
+                int eq = arg.indexOf('=');
+                String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+                String value = eq < 0 ? "" : arg.substring(eq + 1);
+                switch (name) {
+                    case "host": o.host = value; break;
+                    case "port": o.port = Integer.parseInt(value); break;
+                    case "local": o.local = true; break;
+                    case "method": o.method = value; break;
+                    case "mode": o.mode = value; break;
+                    case "rate": o.rate = Double.parseDouble(value); break;
+                    case "connections": o.connections = Integer.parseInt(value); break;
+                    case "concurrency": o.concurrency = Integer.parseInt(value); break;
+                    case "payload": o.payload = Integer.parseInt(value); break;
+                    case "warmup": o.warmup = Long.parseLong(value); break;
+                    case "duration": o.duration = Long.parseLong(value); break;
+                    case "timeout": o.timeout = Long.parseLong(value); break;
+                    case "output": o.output = value; break;
+                    default:
+                        throw new IllegalArgumentException("unknown option --" + name);
+                }
+            }
+            if (!o.method.equals(METHOD_PING) && !o.method.equals(METHOD_CONFIGURE)) {
+                throw new IllegalArgumentException("unknown method " + o.method);
+            }
+            if (!o.mode.equals(MODE_RATE) && !o.mode.equals(MODE_MAX)) {
+                throw new IllegalArgumentException("unknown mode " + o.mode);
+            }
+            if (o.rate <= 0 || o.connections < 1 || o.concurrency < 1 || o.payload < 0 || o.duration < 1) {
+                throw new IllegalArgumentException("rate, connections, concurrency and duration must be positive");
+            }
+            if (!o.local && o.port <= 0) {
+                throw new IllegalArgumentException("--port is required unless --local is given");
+            }
+            return o;
+        }
+    }
+
+    /**
+     * Results of a run. Histogram values are in nanoseconds. The response and service
+     * times include failed requests, and the response time also includes unsent ones.
+     * errorTime has the response times of failed and unsent requests alone.
+     */
+    public static final class Result {
+        public final long requests;
+        public final long errors;
+        public final long unsent;
+        public final double seconds;
+        public final Histogram responseTime;
+        public final Histogram serviceTime;
+        public final Histogram errorTime;
+
+        Result(long requests, long errors, long unsent, double seconds, Histogram responseTime,
+               Histogram serviceTime, Histogram errorTime) {
+            this.requests = requests;
+            this.errors = errors;
+            this.unsent = unsent;
+            this.seconds = seconds;
+            this.responseTime = responseTime;
+            this.serviceTime = serviceTime;
+            this.errorTime = errorTime;
+        }
+
+        public double getThroughput() {
+            return requests / seconds;
+        }
+    }
+
+    /**
+     * Handler used by {@code --local}.
+     */
+    public static class LocalHandler extends DiscoveryGrpc.DiscoveryImplBase {
+        @Override
+        public void ping(Empty request, StreamObserver<Empty> responseObserver) {
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void configure(Configuration request, StreamObserver<ConfigResult> responseObserver) {
+            responseObserver.onNext(ConfigResult.newBuilder()
+                    .setStatus(ConfigResult.Status.OK).build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    private final Options options_;
+    private final ServiceConnector[] connectors_;
+    private final Configuration configuration_;
+    private final Semaphore inFlight_;
+    private final Recorder responseTime_ = new Recorder(3);
+    private final Recorder serviceTime_ = new Recorder(3);
+    private final Recorder errorTime_ = new Recorder(3);
+    private final LongAdder completed_ = new LongAdder();
+    private final LongAdder errors_ = new LongAdder();
+    private final LongAdder unsent_ = new LongAdder();
+    private volatile boolean measuring_;
+    private long sent_;
+
+    /**
+     * Create a load generator with one ServiceConnector per connection to
+     * {@code options.host:options.port}.
+     *
+     * @param options   The options.
+     */
+    public LoadGenerator(Options options) {
+        options_ = options;
+        connectors_ = new ServiceConnector[options.connections];
+        for (int i = 0; i < connectors_.length; ++i) {
+            connectors_[i] = new ServiceConnector(options.host, options.port);
+        }
+        configuration_ = padded(options.payload);
+        inFlight_ = new Semaphore(options.concurrency);
+    }
+
+    /**
+     * Create a configure request of at least {@code payload} bytes. The padding goes in
+     * the name because proto3 drops unknown fields, so padding with one would send an
+     * empty message.
+     */
+    static Configuration padded(int payload) {
+        Configuration.Builder builder = Configuration.newBuilder();
+        if (payload > 0) {
+            char[] name = new char[payload];
+            Arrays.fill(name, 'x');
+            builder.setName(new String(name));
+        }
+        Configuration configuration = builder.build();
+        if (configuration.getSerializedSize() < payload) {
+            throw new IllegalStateException("configure request is " + configuration.getSerializedSize()
+                    + " bytes, expected at least " + payload);
+        }
+        return configuration;
+    }
+
+    /**
+     * Send one request on every connection so connection setup is not measured.
+     */
+    public void connect() throws Exception {
+        for (ServiceConnector connector : connectors_) {
+            connector.ping(options_.timeout);
+        }
+    }
+
+    /**
+     * Run the warm up and then the measured load.
+     *
+     * @return The results of the measured part.
+     */
+    public Result run() throws InterruptedException {
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(options_.warmup);
+        generate(warmupEnd);
+        // Warm up requests are not recorded, but they would hold permits needed by the
+        // measured ones.
+        if (!drain()) {
+            logger.warn("Warm up requests still in flight after " + options_.timeout + " ms");
+        }
+
+        measuring_ = true;
+        long start = System.nanoTime();
+        generate(start + TimeUnit.SECONDS.toNanos(options_.duration));
+        if (!drain()) {
+            logger.warn("Requests still in flight after " + options_.timeout + " ms are not counted");
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        measuring_ = false;
+        return new Result(completed_.sum(), errors_.sum(), unsent_.sum(), seconds,
+                responseTime_.getIntervalHistogram(), serviceTime_.getIntervalHistogram(),
+                errorTime_.getIntervalHistogram());
+    }
+
+    /**
+     * Wait for the requests in flight to complete. Each has a deadline of the request
+     * timeout, so this only gives up if the client fails to deliver the result.
+     *
+     * @return True if no requests are in flight.
+     */
+    private boolean drain() throws InterruptedException {
+        if (!inFlight_.tryAcquire(options_.concurrency, options_.timeout + 1000, MILLISECONDS)) {
+            return false;
+        }
+        inFlight_.release(options_.concurrency);
+        return true;
+    }
+
+    /**
+     * Shutdown all connections.
+     */
+    public void shutdown() throws InterruptedException {
+        for (ServiceConnector connector : connectors_) {
+            connector.shutdown();
+        }
+        for (ServiceConnector connector : connectors_) {
+            connector.blockUntilShutdown(3000);
+        }
+    }
+
+    private void generate(long end) throws InterruptedException {
+        boolean openLoop = options_.mode.equals(MODE_RATE);
+        double interval = 1e9 / options_.rate;
+        long start = System.nanoTime();
+        for (long i = 0; ; ++i) {
+            long intended = openLoop ? start + (long) (i * interval) : System.nanoTime();
+            if (intended >= end) {
+                return;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (!inFlight_.tryAcquire(end - now, TimeUnit.NANOSECONDS)) {
+                if (openLoop) {
+                    recordUnsent(start, i, interval, end);
+                }
+                return;
+            }
+            send(openLoop ? intended : System.nanoTime());
+        }
+    }
+
+    /**
+     * Record the requests scheduled from the {@code i}th on that were never sent because
+     * the concurrency limit was still reached at the end. Each is charged the time from
+     * when it should have been sent until now, so a stalled service does not look idle.
+     */
+    private void recordUnsent(long start, long i, double interval, long end) {
+        if (!measuring_) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (long intended; (intended = start + (long) (i * interval)) < end; ++i) {
+            responseTime_.recordValue(now - intended);
+            errorTime_.recordValue(now - intended);
+            unsent_.increment();
+        }
+    }
+
+    private void send(long intended) {
+        DiscoveryGrpc.DiscoveryStub stub = DiscoveryGrpc.newStub(
+                connectors_[(int) (sent_++ % connectors_.length)].getChannel())
+                .withDeadlineAfter(options_.timeout, MILLISECONDS);
+        if (options_.method.equals(METHOD_PING)) {
+            stub.ping(Empty.getDefaultInstance(), new Call<Empty>(intended));
+        } else {
+            stub.configure(configuration_, new Call<ConfigResult>(intended));
+        }
+    }
+
+    private final class Call<T> implements StreamObserver<T> {
+        private final long intended;
+        private final long sent = System.nanoTime();
+        private final boolean measured = measuring_;
+
+        Call(long intended) {
+            this.intended = intended;
+        }
+
+        @Override
+        public void onNext(T value) {
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (measured) {
+                long now = System.nanoTime();
+                responseTime_.recordValue(now - intended);
+                serviceTime_.recordValue(now - sent);
+                errorTime_.recordValue(now - intended);
+                errors_.increment();
+            }
+            inFlight_.release();
+        }
+
+        @Override
+        public void onCompleted() {
+            if (measured) {
+                long now = System.nanoTime();
+                responseTime_.recordValue(now - intended);
+                serviceTime_.recordValue(now - sent);
+                completed_.increment();
+            }
+            inFlight_.release();
+        }
+    }
+
+    /**
+     * Print a summary of {@code result}.
+     */
+    public void report(Result result, PrintStream out) {
+        out.printf("method=%s mode=%s rate=%s connections=%d concurrency=%d payload=%d%n",
+                options_.method, options_.mode, options_.mode.equals(MODE_RATE) ? options_.rate : "max",
+                options_.connections, options_.concurrency, options_.payload);
+        out.printf("requests=%d errors=%d unsent=%d seconds=%.3f throughput=%.1f/s%n",
+                result.requests, result.errors, result.unsent, result.seconds, result.getThroughput());
+        printPercentiles("response time (corrected for coordinated omission)", result.responseTime, out);
+        printPercentiles("service time", result.serviceTime, out);
+        if (result.errors + result.unsent > 0) {
+            printPercentiles("response time of failed and unsent requests", result.errorTime, out);
+        }
+    }
+
+    private static void printPercentiles(String title, Histogram h, PrintStream out) {
+        out.printf("%s, us: p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f%n", title,
+                h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(90) / 1e3,
+                h.getValueAtPercentile(99) / 1e3, h.getValueAtPercentile(99.9) / 1e3,
+                h.getValueAtPercentile(99.99) / 1e3, h.getMaxValue() / 1e3);
+    }
+
+    /**
+     * Write the summary followed by the full percentile distributions, in microseconds, in
+     * the format read by the HdrHistogram plotter.
+     */
+    public void write(Result result, String fileName) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(fileName), false, "UTF-8")) {
+            report(result, out);
+            out.println();
+            out.println("# response time (corrected for coordinated omission), us");
+            result.responseTime.outputPercentileDistribution(out, 1000.0);
+            out.println();
+            out.println("# service time, us");
+            result.serviceTime.outputPercentileDistribution(out, 1000.0);
+            if (result.errors + result.unsent > 0) {
+                out.println();
+                out.println("# response time of failed and unsent requests, us");
+                result.errorTime.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            if (args.length == 1 && args[0].equals("--help")) {
+                System.out.print(Options.USAGE);
+                return;
+            }
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        ServiceAcceptor server = null;
+        if (options.local) {
+            server = new ServiceAcceptor(ServerBuilder.forPort(options.port), options.port, new LocalHandler());
+            server.start();
+            options.port = server.getServer().getPort();
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        try {
+            generator.connect();
+            Result result = generator.run();
+            generator.report(result, System.out);
+            if (options.output != null) {
+                generator.write(result, options.output);
+                logger.info("Results written to " + options.output);
+            }
+        } finally {
+            generator.shutdown();
+            if (server != null) {
+                server.shutdown().blockUntilShutdown(3000);
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ package ai.marbles.grpc;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.BindableService;
+import io.grpc.netty.NettyServerBuilder;
 
 import java.io.IOException;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -22,11 +23,120 @@ import org.apache.log4j.Logger;
 public class ServiceAcceptor {
     private static final Logger logger = LogManager.getLogger(ServiceAcceptor.class);
 
+    /**
+     * Connection management settings, used only when passed to a constructor. All times
+     * are in milliseconds and zero disables the setting. The defaults detect dead
+     * connections and accept client keepalive pings; connection age and idle limits are
+     * disabled unless set, since they close connections that long streams may be using.
+     */
+    public static final class Settings {
+        long keepAliveTime_ = 60000;
+        long keepAliveTimeout_ = 20000;
+        long permitKeepAliveTime_ = 30000;
+        boolean permitKeepAliveWithoutCalls_ = true;
+        long maxConnectionIdle_ = 0;
+        long maxConnectionAge_ = 0;
+        long maxConnectionAgeGrace_ = 0;
+
+        /**
+         * Ping a client after the connection has been quiet for {@code millis}, to detect
+         * and close dead connections. Default 60 seconds.
+         */
+        public Settings keepAliveTime(long millis) {
+            keepAliveTime_ = millis;
+            return this;
+        }
+
+        /**
+         * Close the connection if a keepalive ping is not answered within {@code millis}.
+         * Default 20 seconds.
+         */
+        public Settings keepAliveTimeout(long millis) {
+            keepAliveTimeout_ = millis;
+            return this;
+        }
+
+        /**
+         * The shortest interval allowed between client keepalive pings. Clients pinging more
+         * often are disconnected. Must not exceed the client's keepalive time. Default 30
+         * seconds.
+         */
+        public Settings permitKeepAliveTime(long millis) {
+            permitKeepAliveTime_ = millis;
+            return this;
+        }
+
+        /**
+         * Allow client keepalive pings when there are no calls in progress. Default true,
+         * so clients that keep idle connections open are not disconnected.
+         */
+        public Settings permitKeepAliveWithoutCalls(boolean permit) {
+            permitKeepAliveWithoutCalls_ = permit;
+            return this;
+        }
+
+        /**
+         * Close connections that have had no calls for {@code millis}. Default disabled.
+         */
+        public Settings maxConnectionIdle(long millis) {
+            maxConnectionIdle_ = millis;
+            return this;
+        }
+
+        /**
+         * Ask clients to reconnect once a connection is {@code millis} old, so load is
+         * rebalanced when replicas are added, for example 30 minutes. Set a grace period
+         * long enough for the longest stream too. Default disabled.
+         */
+        public Settings maxConnectionAge(long millis) {
+            maxConnectionAge_ = millis;
+            return this;
+        }
+
+        /**
+         * Time allowed for calls to finish once a connection reaches its maximum age, after
+         * which it is closed. Default unlimited.
+         */
+        public Settings maxConnectionAgeGrace(long millis) {
+            maxConnectionAgeGrace_ = millis;
+            return this;
+        }
+
+        /**
+         * Apply the settings to {@code builder}.
+         *
+         * @return The builder.
+         */
+        public NettyServerBuilder apply(NettyServerBuilder builder) {
+            if (keepAliveTime_ > 0) {
+                builder.keepAliveTime(keepAliveTime_, MILLISECONDS);
+            }
+            if (keepAliveTimeout_ > 0) {
+                builder.keepAliveTimeout(keepAliveTimeout_, MILLISECONDS);
+            }
+            if (permitKeepAliveTime_ > 0) {
+                builder.permitKeepAliveTime(permitKeepAliveTime_, MILLISECONDS);
+            }
+            builder.permitKeepAliveWithoutCalls(permitKeepAliveWithoutCalls_);
+            if (maxConnectionIdle_ > 0) {
+                builder.maxConnectionIdle(maxConnectionIdle_, MILLISECONDS);
+            }
+            if (maxConnectionAge_ > 0) {
+                builder.maxConnectionAge(maxConnectionAge_, MILLISECONDS);
+                if (maxConnectionAgeGrace_ > 0) {
+                    builder.maxConnectionAgeGrace(maxConnectionAgeGrace_, MILLISECONDS);
+                }
+            }
+            return builder;
+        }
+    }
+
     private final int port_;
     private final Server server_;
 
     /**
-      * Create a server listening on {@code port} using service to handle requests.
+      * Create a server listening on {@code port} using service to handle requests, with
+      * the gRPC default connection management.
       *
       * @param  port    The port to listen on
       * @param  service The service used to handle requests.
@@ -35,6 +145,17 @@ public class ServiceAcceptor {
         this(ServerBuilder.forPort(port), port, service);
     }
 
+    /**
+      * Create a server listening on {@code port} using service to handle requests.
+      *
+      * @param  port     The port to listen on
+      * @param  service  The service used to handle requests.
+      * @param  settings Keepalive and connection age settings.
+      */
+    public ServiceAcceptor(int port, io.grpc.BindableService service, Settings settings) throws IOException {
+        this(settings.apply(NettyServerBuilder.forPort(port)), port, service);
+    }
+
     /**
      * Create a server using serverBuilder as a base and using service to handle requests.
      */
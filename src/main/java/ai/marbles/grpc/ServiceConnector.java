@@ -7,9 +7,11 @@
 package ai.marbles.grpc;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.Channel;
+import io.grpc.netty.NettyChannelBuilder;
 /* import io.grpc.Status; */
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
@@ -21,11 +23,13 @@ import java.net.UnknownServiceException;
 import java.util.Collections;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.DAYS;
 
 import org.apache.log4j.LogManager;
@@ -40,11 +44,96 @@ import ai.marbles.grpc.DiscoveryGrpc;
 public final class ServiceConnector {
     private static final Logger logger = LogManager.getLogger(ServiceConnector.class);
 
+    /**
+     * Channel settings, used only when passed to a constructor. All times are in
+     * milliseconds and zero disables the setting. The defaults detect dead connections
+     * while calls are in progress and never let the channel go idle. Pinging without
+     * calls is off by default, since servers that do not permit it close the connection
+     * with too_many_pings.
+     */
+    public static final class Settings {
+        long keepAliveTime_ = 60000;
+        long keepAliveTimeout_ = 20000;
+        boolean keepAliveWithoutCalls_ = false;
+        long idleTimeout_ = 0;
+        boolean warmUp_ = true;
+
+        /**
+         * Ping the server after the connection has been quiet for {@code millis}. Must be
+         * at least the server's permitted keepalive time, or the server closes the
+         * connection. Default 60 seconds.
+         */
+        public Settings keepAliveTime(long millis) {
+            keepAliveTime_ = millis;
+            return this;
+        }
+
+        /**
+         * Reconnect if a keepalive ping is not answered within {@code millis}. Default 20
+         * seconds.
+         */
+        public Settings keepAliveTimeout(long millis) {
+            keepAliveTimeout_ = millis;
+            return this;
+        }
+
+        /**
+         * Send keepalive pings when there are no calls in progress, to keep connections
+         * open through NAT and load balancers that drop idle ones. The server must permit
+         * it. Default false.
+         */
+        public Settings keepAliveWithoutCalls(boolean enable) {
+            keepAliveWithoutCalls_ = enable;
+            return this;
+        }
+
+        /**
+         * Disconnect after {@code millis} without calls. Default disabled, so the
+         * connection stays open.
+         */
+        public Settings idleTimeout(long millis) {
+            idleTimeout_ = millis;
+            return this;
+        }
+
+        /**
+         * Start connecting when the connector is constructed rather than on the first call.
+         * Default true.
+         */
+        public Settings warmUp(boolean enable) {
+            warmUp_ = enable;
+            return this;
+        }
+
+        /**
+         * Apply the settings to {@code builder}.
+         *
+         * @return The builder.
+         */
+        public NettyChannelBuilder apply(NettyChannelBuilder builder) {
+            if (keepAliveTime_ > 0) {
+                builder.keepAliveTime(keepAliveTime_, MILLISECONDS);
+                if (keepAliveTimeout_ > 0) {
+                    builder.keepAliveTimeout(keepAliveTimeout_, MILLISECONDS);
+                }
+                builder.keepAliveWithoutCalls(keepAliveWithoutCalls_);
+            }
+            if (idleTimeout_ > 0) {
+                builder.idleTimeout(idleTimeout_, MILLISECONDS);
+            } else {
+                // grpc treats 30 days or more as never going idle.
+                builder.idleTimeout(DAYS.toMillis(30), MILLISECONDS);
+            }
+            return builder;
+        }
+    }
+
     private final ManagedChannel channel_;
     private final SecureRandom random_ = new SecureRandom();
 
     /**
-     * Construct client for accessing a Lucida service at {@code host:port}.
+     * Construct client for accessing a Lucida service at {@code host:port}, with the
+     * gRPC default channel settings.
      * If port=443 then the channel will be secure via TLS, otherwise the channel
      * is insecure. No authentication is provided in either case.
      *
@@ -55,6 +144,21 @@ public final class ServiceConnector {
         this(ManagedChannelBuilder.forAddress(host, port).usePlaintext(true));
     }
 
+    /**
+     * Construct client for accessing a Lucida service at {@code host:port}.
+     *
+     * @param host      Fully qualified host name
+     * @param port      The port number [1,65536)
+     * @param settings  Keepalive, idle timeout and warm up settings.
+     */
+    public ServiceConnector(String host, int port, Settings settings) {
+        this(settings.apply(NettyChannelBuilder.forAddress(host, port).usePlaintext(true)));
+        if (settings.warmUp_) {
+            // Connect in the background so the first call does not pay for it.
+            channel_.getState(true);
+        }
+    }
+
     /**
      * Construct client for accessing a Lucida service using an existing channel.
      * The channel credentials and encryption is dictated by the channelBuilder.
@@ -75,6 +179,27 @@ public final class ServiceConnector {
         return channel_;
     }
 
+    /**
+     * Connect if not connected and wait until the channel is ready for calls.
+     *
+     * @param timeout   Timeout in milliseconds.
+     * @return True if the channel is ready. False on timeout or if it has been shutdown.
+     */
+    public boolean awaitReady(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(timeout);
+        ConnectivityState state;
+        while ((state = channel_.getState(true)) != ConnectivityState.READY) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || state == ConnectivityState.SHUTDOWN) {
+                return false;
+            }
+            CountDownLatch changed = new CountDownLatch(1);
+            channel_.notifyWhenStateChanged(state, changed::countDown);
+            changed.await(remaining, NANOSECONDS);
+        }
+        return true;
+    }
+
     /**
      * Shutdown the client connection gracefully.
      */
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import io.grpc.Status;
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receives a stream of messages as a blocking Iterator with bounded prefetch. Automatic
+ * inbound flow control is turned off and at most {@code prefetch} messages are requested
+ * ahead of the consumer, so a fast sender cannot fill memory. More messages are requested
+ * once {@code batch} have been consumed, rather than one request per message.
+ *
+ * <p>Server streaming call:</p>
+ * <pre>
+ * StreamReceiver&lt;Item&gt; items = new StreamReceiver&lt;&gt;(64);
+ * stub.list(request, items);
+ * while (items.hasNext()) {
+ *     process(items.next());
+ * }
+ * </pre>
+ *
+ * <p>Client streaming handler, consumed on an application thread since hasNext blocks:</p>
+ * <pre>
+ * public StreamObserver&lt;Item&gt; upload(StreamObserver&lt;Result&gt; responseObserver) {
+ *     StreamReceiver&lt;Item&gt; items = StreamReceiver.forServer(responseObserver, 64);
+ *     executor.execute(() -&gt; ...);
+ *     return items;
+ * }
+ * </pre>
+ *
+ * <p>The iterator must be used by one thread at a time. Errors from the call are thrown
+ * from hasNext as a StatusRuntimeException. A consumer that stops before the end of the
+ * stream must call {@link #cancel} or {@link #close}, otherwise the call stays open with
+ * messages requested.</p>
+ *
+ * @see StreamSender
+ */
+public final class StreamReceiver<T> implements ClientResponseObserver<Object, T>, Iterator<T>, AutoCloseable {
+
+    private static final Object END = new Object();
+
+    private static final class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final int prefetch_;
+    private final int batch_;
+    // Room for one message more than requested, in case gRPC requests one when the call
+    // starts, and for the end of stream.
+    private final BlockingQueue<Object> queue_;
+    private final AtomicBoolean primed_ = new AtomicBoolean();
+    private volatile CallStreamObserver<?> call_;
+    private volatile boolean initialRequest_;
+    private Object next_;
+    private int consumed_;
+
+    /**
+     * Create a receiver requesting more messages when half of {@code prefetch} have been
+     * consumed.
+     *
+     * @param prefetch  Maximum number of messages requested ahead of the consumer.
+     */
+    public StreamReceiver(int prefetch) {
+        this(prefetch, Math.max(1, prefetch / 2));
+    }
+
+    /**
+     * @param prefetch  Maximum number of messages requested ahead of the consumer.
+     * @param batch     Number of messages consumed before more are requested.
+     */
+    public StreamReceiver(int prefetch, int batch) {
+        if (prefetch < 1 || batch < 1 || batch > prefetch) {
+            throw new IllegalArgumentException("need 1 <= batch <= prefetch");
+        }
+        prefetch_ = prefetch;
+        batch_ = batch;
+        queue_ = new ArrayBlockingQueue<Object>(prefetch + 2);
+    }
+
+    /**
+     * Create a receiver for the requests of a client streaming or bidirectional service
+     * method. Must be called from the service method, before it returns.
+     *
+     * @param responseObserver  The response observer passed to the service method.
+     * @param prefetch          Maximum number of messages requested ahead of the consumer.
+     * @return The receiver, to be returned from the service method as the request observer.
+     */
+    public static <T> StreamReceiver<T> forServer(StreamObserver<?> responseObserver, int prefetch) {
+        StreamReceiver<T> receiver = new StreamReceiver<T>(prefetch);
+        ServerCallStreamObserver<?> call = (ServerCallStreamObserver<?>) responseObserver;
+        call.disableAutoInboundFlowControl();
+        receiver.call_ = call;
+        receiver.prime();
+        return receiver;
+    }
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Object> requestStream) {
+        requestStream.disableAutoInboundFlowControl();
+        call_ = requestStream;
+        // The client stub requests one response when it starts the call.
+        initialRequest_ = true;
+    }
+
+    /**
+     * Request the first window. Calls cannot be asked for messages before they start. On
+     * the server the call has started when the receiver is created. On the client
+     * beforeStart runs before the stub starts the call, so this waits for the first
+     * message, which the stub's own request brings.
+     */
+    private void prime() {
+        CallStreamObserver<?> call = call_;
+        if (call != null && primed_.compareAndSet(false, true)) {
+            int n = initialRequest_ ? prefetch_ - 1 : prefetch_;
+            if (n > 0) {
+                call.request(n);
+            }
+        }
+    }
+
+    @Override
+    public void onNext(T value) {
+        prime();
+        if (!queue_.offer(value)) {
+            throw new IllegalStateException("more messages received than requested");
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        queue_.offer(new Failure(t));
+    }
+
+    @Override
+    public void onCompleted() {
+        queue_.offer(END);
+    }
+
+    /**
+     * Wait for the next message.
+     *
+     * @return True if there is another message, false at the end of the stream.
+     * @throws io.grpc.StatusRuntimeException If the call failed, or CANCELLED if the
+     *                                        thread was interrupted.
+     */
+    @Override
+    public boolean hasNext() {
+        if (next_ == null) {
+            try {
+                next_ = queue_.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel("Interrupted", e);
+                throw Status.CANCELLED.withDescription("Interrupted while waiting for a message")
+                        .withCause(e).asRuntimeException();
+            }
+        }
+        if (next_ instanceof Failure) {
+            throw Status.fromThrowable(((Failure) next_).cause).asRuntimeException();
+        }
+        return next_ != END;
+    }
+
+    /**
+     * Stop receiving. On the client this cancels the call, so the server sees CANCELLED
+     * and stops sending. On the server the client is not told, but no further messages
+     * are requested. Later calls to hasNext return false. Must be called from the
+     * consuming thread.
+     *
+     * @param message   Why the call was cancelled, sent to the server. May be null.
+     * @param cause     The cause, or null.
+     */
+    public void cancel(String message, Throwable cause) {
+        CallStreamObserver<?> call = call_;
+        if (call instanceof ClientCallStreamObserver) {
+            ((ClientCallStreamObserver<?>) call).cancel(message, cause);
+        }
+        call_ = null;
+        queue_.clear();
+        next_ = END;
+    }
+
+    /**
+     * Cancel the call if the stream has not ended, so the receiver can be used with
+     * try-with-resources.
+     */
+    @Override
+    public void close() {
+        if (next_ != END) {
+            cancel("Receiver closed", null);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T value = (T) next_;
+        next_ = null;
+        if (++consumed_ >= batch_ && call_ != null) {
+            call_.request(consumed_);
+            consumed_ = 0;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a stream of messages only as fast as the transport accepts them. Messages are
+ * pulled from an Iterator while the call is ready and sending resumes from the call's
+ * onReady handler, so at most a flow control window of messages is buffered however
+ * large the stream is. Calling onNext in a loop instead buffers the whole stream in
+ * Netty when the receiver is slower than the sender.
+ *
+ * <p>Server streaming handler:</p>
+ * <pre>
+ * public void list(Request request, StreamObserver&lt;Item&gt; responseObserver) {
+ *     StreamSender.serve(items(request), responseObserver);
+ * }
+ * </pre>
+ *
+ * <p>Client streaming call:</p>
+ * <pre>
+ * stub.upload(StreamSender.forClient(items, responseObserver));
+ * </pre>
+ *
+ * @see StreamReceiver
+ */
+public final class StreamSender<T> implements Runnable {
+
+    private final Iterator<? extends T> source_;
+    private final CallStreamObserver<T> target_;
+    private final AtomicInteger wip_ = new AtomicInteger();
+    private volatile boolean done_;
+
+    private StreamSender(Iterator<? extends T> source, CallStreamObserver<T> target) {
+        source_ = source;
+        target_ = target;
+    }
+
+    /**
+     * Send all messages from {@code source} then complete the response. Must be called
+     * from the service method, before it returns, because it installs the call's onReady
+     * and onCancel handlers. The source is read on gRPC threads.
+     *
+     * @param source            The messages to send.
+     * @param responseObserver  The response observer passed to the service method.
+     */
+    public static <T> void serve(Iterator<? extends T> source, StreamObserver<T> responseObserver) {
+        if (!(responseObserver instanceof ServerCallStreamObserver)) {
+            // Not a gRPC call, e.g. a handler called directly. There is no flow control.
+            try {
+                while (source.hasNext()) {
+                    responseObserver.onNext(source.next());
+                }
+            } catch (RuntimeException e) {
+                responseObserver.onError(e);
+                return;
+            }
+            responseObserver.onCompleted();
+            return;
+        }
+        final ServerCallStreamObserver<T> call = (ServerCallStreamObserver<T>) responseObserver;
+        final StreamSender<T> sender = new StreamSender<T>(source, call);
+        call.setOnCancelHandler(() -> sender.done_ = true);
+        call.setOnReadyHandler(sender);
+        sender.run();
+    }
+
+    /**
+     * Create a response observer for a client streaming or bidirectional call which sends
+     * all messages from {@code source} then half closes. If {@code responseObserver} is a
+     * ClientResponseObserver, e.g. a {@link StreamReceiver}, its beforeStart is called too.
+     *
+     * @param source            The messages to send.
+     * @param responseObserver  Receives the responses.
+     * @return The observer to pass to the async stub.
+     */
+    public static <ReqT, RespT> ClientResponseObserver<ReqT, RespT> forClient(final Iterator<? extends ReqT> source,
+                                                                           final StreamObserver<RespT> responseObserver) {
+        return new ClientResponseObserver<ReqT, RespT>() {
+            private StreamSender<ReqT> sender_;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+                sender_ = new StreamSender<ReqT>(source, requestStream);
+                requestStream.setOnReadyHandler(sender_);
+                if (responseObserver instanceof ClientResponseObserver) {
+                    ((ClientResponseObserver<ReqT, RespT>) responseObserver).beforeStart(requestStream);
+                }
+            }
+
+            @Override
+            public void onNext(RespT value) {
+                responseObserver.onNext(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                // The call is over, stop reading the source.
+                sender_.done_ = true;
+                responseObserver.onError(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                sender_.done_ = true;
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    /**
+     * Send while the call is ready. Called again by gRPC when the call becomes ready. Calls
+     * that overlap are merged so only one thread reads the source at a time.
+     */
+    @Override
+    public void run() {
+        if (wip_.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drain();
+            missed = wip_.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() {
+        while (!done_ && target_.isReady()) {
+            T next;
+            try {
+                if (!source_.hasNext()) {
+                    done_ = true;
+                    target_.onCompleted();
+                    return;
+                }
+                next = source_.next();
+            } catch (RuntimeException e) {
+                done_ = true;
+                target_.onError(e);
+                return;
+            }
+            target_.onNext(next);
+        }
+    }
+}
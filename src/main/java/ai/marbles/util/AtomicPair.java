@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+
+/**
+ * A thread safe pair without locks. Both values live in one immutable snapshot held
+ * by an {@link AtomicReference}, so a reader always sees a first and second that were
+ * set together and writers never block each other.
+ *
+ * <p>The fields inherited from Pair are unused; the Pair copy constructor, equals and
+ * hashCode read the values through the accessors.</p>
+ */
+public class AtomicPair<T1, T2> extends Pair<T1, T2> {
+
+    private static final class Snapshot<A, B> {
+        final A first;
+        final B second;
+
+        Snapshot(A first, B second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+
+    private final AtomicReference<Snapshot<T1, T2>> ref;
+
+    public AtomicPair(T1 first_, T2 second_) {
+        super(null, null);
+        ref = new AtomicReference<>(new Snapshot<>(first_, second_));
+    }
+
+    public AtomicPair() {
+        this(null, null);
+    }
+
+    /**
+     * Swap the values of {@code pair} atomically.
+     */
+    public static <X> void swap(AtomicPair<X, X> pair) {
+        Snapshot<X, X> current;
+        do {
+            current = pair.ref.get();
+        } while (!pair.ref.compareAndSet(current, new Snapshot<>(current.second, current.first)));
+    }
+
+    /**
+     * @return A consistent copy of both values.
+     */
+    public Pair<T1, T2> get() {
+        Snapshot<T1, T2> s = ref.get();
+        return new Pair<T1, T2>(s.first, s.second);
+    }
+
+    /**
+     * Set both values atomically.
+     */
+    public void set(T1 first_, T2 second_) {
+        ref.set(new Snapshot<>(first_, second_));
+    }
+
+    /**
+     * Set both values if the current values are identical (==) to the expected ones.
+     *
+     * @return True if successful.
+     */
+    public boolean compareAndSet(T1 expectFirst, T2 expectSecond, T1 first_, T2 second_) {
+        Snapshot<T1, T2> current = ref.get();
+        return current.first == expectFirst && current.second == expectSecond
+                && ref.compareAndSet(current, new Snapshot<>(first_, second_));
+    }
+
+    /**
+     * Atomically replace the first value with the result of applying
+     * {@code accumulator} to the current value and {@code x}.
+     *
+     * @return The updated value.
+     */
+    public T1 accumulateFirst(T1 x, BinaryOperator<T1> accumulator) {
+        Snapshot<T1, T2> current, next;
+        do {
+            current = ref.get();
+            next = new Snapshot<>(accumulator.apply(current.first, x), current.second);
+        } while (!ref.compareAndSet(current, next));
+        return next.first;
+    }
+
+    /**
+     * Atomically replace the second value with the result of applying
+     * {@code accumulator} to the current value and {@code x}.
+     *
+     * @return The updated value.
+     */
+    public T2 accumulateSecond(T2 x, BinaryOperator<T2> accumulator) {
+        Snapshot<T1, T2> current, next;
+        do {
+            current = ref.get();
+            next = new Snapshot<>(current.first, accumulator.apply(current.second, x));
+        } while (!ref.compareAndSet(current, next));
+        return next.second;
+    }
+
+    @Override
+    public T1 getFirst() {
+        return ref.get().first;
+    }
+
+    @Override
+    public void setFirst(T1 first_) {
+        Snapshot<T1, T2> current;
+        do {
+            current = ref.get();
+        } while (!ref.compareAndSet(current, new Snapshot<>(first_, current.second)));
+    }
+
+    @Override
+    public T2 getSecond() {
+        return ref.get().second;
+    }
+
+    @Override
+    public void setSecond(T2 second_) {
+        Snapshot<T1, T2> current;
+        do {
+            current = ref.get();
+        } while (!ref.compareAndSet(current, new Snapshot<>(current.first, second_)));
+    }
+
+    @Override
+    public int hashCode() {
+        return get().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        return obj instanceof Pair && get().equals(obj);
+    }
+
+    @Override
+    public String toString() {
+        return get().toString();
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return get().iterator();
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        Snapshot<T1, T2> s = ref.get();
+        return new AtomicPair<T1, T2>(s.first, s.second);
+    }
+
+    @Override
+    public Pair<T1, T2> copy() {
+        return get();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+
+/**
+ * A mutable pair of an int and an object, e.g. an index and a value, without boxing
+ * the int.
+ */
+public class IntObjectPair<T> implements Cloneable {
+
+    public static <Y> IntObjectPair<Y> makePair(int x, Y y) {
+        return new IntObjectPair<Y>(x, y);
+    }
+
+    public IntObjectPair(int first_, T second_) {
+        this.first_ = first_;
+        this.second_ = second_;
+    }
+
+    public IntObjectPair() {
+    }
+
+    private int first_;
+    private T second_;
+
+    public int getFirst() {
+        return first_;
+    }
+
+    public void setFirst(int first_) {
+        this.first_ = first_;
+    }
+
+    public T getSecond() {
+        return second_;
+    }
+
+    public void setSecond(T second_) {
+        this.second_ = second_;
+    }
+
+    /**
+     * Set both values, for reuse as a cursor.
+     */
+    public IntObjectPair<T> set(int first_, T second_) {
+        this.first_ = first_;
+        this.second_ = second_;
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * first_ + ((second_ == null) ? 0 : second_.hashCode());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        @SuppressWarnings("rawtypes")
+        IntObjectPair other = (IntObjectPair) obj;
+        if (first_ != other.first_)
+            return false;
+        return second_ == null ? other.second_ == null : second_.equals(other.second_);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + first_ + ", " + second_ + ")";
+    }
+
+    @Override
+    public IntObjectPair<T> clone() {
+        return copy();
+    }
+
+    public IntObjectPair<T> copy() {
+        return new IntObjectPair<T>(first_, second_);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+
+/**
+ * A mutable pair of ints. Unlike {@code Pair<Integer, Integer>} nothing is boxed, and
+ * an instance can be reused as a cursor, see {@link Zip}.
+ */
+public class IntPair implements Cloneable {
+
+    public static IntPair makePair(int x, int y) {
+        return new IntPair(x, y);
+    }
+
+    public IntPair(int first_, int second_) {
+        this.first_ = first_;
+        this.second_ = second_;
+    }
+
+    public IntPair() {
+    }
+
+    private int first_;
+    private int second_;
+
+    public int getFirst() {
+        return first_;
+    }
+
+    public void setFirst(int first_) {
+        this.first_ = first_;
+    }
+
+    public int getSecond() {
+        return second_;
+    }
+
+    public void setSecond(int second_) {
+        this.second_ = second_;
+    }
+
+    /**
+     * Set both values, for reuse as a cursor.
+     */
+    public IntPair set(int first_, int second_) {
+        this.first_ = first_;
+        this.second_ = second_;
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * first_ + second_;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        IntPair other = (IntPair) obj;
+        return first_ == other.first_ && second_ == other.second_;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + first_ + ", " + second_ + ")";
+    }
+
+    @Override
+    public IntPair clone() {
+        return copy();
+    }
+
+    public IntPair copy() {
+        return new IntPair(first_, second_);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+
+/**
+ * A mutable pair of longs. Unlike {@code Pair<Long, Long>} nothing is boxed, and
+ * an instance can be reused as a cursor, see {@link Zip}.
+ */
+public class LongPair implements Cloneable {
+
+    public static LongPair makePair(long x, long y) {
+        return new LongPair(x, y);
+    }
+
+    public LongPair(long first_, long second_) {
+        this.first_ = first_;
+        this.second_ = second_;
+    }
+
+    public LongPair() {
+    }
+
+    private long first_;
+    private long second_;
+
+    public long getFirst() {
+        return first_;
+    }
+
+    public void setFirst(long first_) {
+        this.first_ = first_;
+    }
+
+    public long getSecond() {
+        return second_;
+    }
+
+    public void setSecond(long second_) {
+        this.second_ = second_;
+    }
+
+    /**
+     * Set both values, for reuse as a cursor.
+     */
+    public LongPair set(long first_, long second_) {
+        this.first_ = first_;
+        this.second_ = second_;
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(first_) + Long.hashCode(second_);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        LongPair other = (LongPair) obj;
+        return first_ == other.first_ && second_ == other.second_;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + first_ + ", " + second_ + ")";
+    }
+
+    @Override
+    public LongPair clone() {
+        return copy();
+    }
+
+    public LongPair copy() {
+        return new LongPair(first_, second_);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+
+/**
+ * Two ints packed into one long, first in the high word. A packed pair is a plain
+ * value, so it can be stored in a {@code long[]} or passed through a
+ * {@link java.util.stream.LongStream} without any allocation.
+ */
+public final class PackedIntPair {
+
+    private PackedIntPair() {
+    }
+
+    public static long pack(int first_, int second_) {
+        return ((long) first_ << 32) | (second_ & 0xFFFFFFFFL);
+    }
+
+    public static int first(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int second(long packed) {
+        return (int) packed;
+    }
+
+    public static long swap(long packed) {
+        return pack(second(packed), first(packed));
+    }
+
+    public static IntPair unpack(long packed) {
+        return new IntPair(first(packed), second(packed));
+    }
+
+    public static String toString(long packed) {
+        return "(" + first(packed) + ", " + second(packed) + ")";
+    }
+}
@@ -22,14 +22,22 @@ public class Pair<T1, T2> implements Iterable<Object>, Cloneable{
             return new Pair<X, X[]>(null, null);
         if (xs.length == 1)
             return new Pair<X, X[]>(xs[0], null);
-        return new Pair<X, X[]>(xs[0], Arrays.copyOfRange(xs, 1, xs.length - 1));
+        return new Pair<X, X[]>(xs[0], Arrays.copyOfRange(xs, 1, xs.length));
     }
 
     public static <X, Y> Pair<X, Y> reverse(Pair<Y, X> original){
         return makePair(original.getSecond(), original.getFirst());
     }
 
-    public static synchronized <X> void swap(Pair<X, X> swapped){
+    /**
+     * Swap the values of a pair. This is atomic if the pair is an AtomicPair,
+     * otherwise the caller is responsible for any locking.
+     */
+    public static <X> void swap(Pair<X, X> swapped){
+        if (swapped instanceof AtomicPair) {
+            AtomicPair.swap((AtomicPair<X, X>) swapped);
+            return;
+        }
         X tmp = swapped.getFirst();
         swapped.setFirst(swapped.getSecond());
         swapped.setSecond(tmp);
@@ -85,7 +93,7 @@ public class Pair<T1, T2> implements Iterable<Object>, Cloneable{
         return y1.equals(y2);
     }
 
-    public static synchronized <X, Y> Pair<X, Y> immutablePair(Pair<X, Y> pair){
+    public static <X, Y> Pair<X, Y> immutablePair(Pair<X, Y> pair){
         final Pair<X, Y> wrapped = pair;
         return new Pair<X, Y>(null, null){
 
@@ -142,7 +150,24 @@ public class Pair<T1, T2> implements Iterable<Object>, Cloneable{
         };
     }
 
-    public static synchronized <X, Y> Pair<X, Y> synchronizedPair(Pair<X, Y> pair){
+    /**
+     * Create a thread safe pair holding the current values of {@code pair}.
+     * The result is lock free and is not backed by {@code pair}; later changes
+     * to either are not reflected in the other.
+     */
+    public static <X, Y> AtomicPair<X, Y> atomicPair(Pair<X, Y> pair){
+        return new AtomicPair<X, Y>(pair.getFirst(), pair.getSecond());
+    }
+
+    /**
+     * Create a view of {@code pair} whose methods synchronize on the view. Changes
+     * through the view write through to {@code pair}, but other references to
+     * {@code pair} bypass the lock.
+     *
+     * @deprecated Use {@link #atomicPair} or an {@link AtomicPair}, which do not lock.
+     */
+    @Deprecated
+    public static <X, Y> Pair<X, Y> synchronizedPair(Pair<X, Y> pair){
         final Pair<X, Y> wrapped = pair;
         return new Pair<X, Y>(null, null){
 
@@ -212,8 +237,10 @@ public class Pair<T1, T2> implements Iterable<Object>, Cloneable{
     }
 
     public Pair(Pair<T1, T2> copy) {
-        first_ = copy.first_;
-        second_ = copy.second_;
+        // Read through the accessors, AtomicPair and the views keep their values elsewhere.
+        Pair<T1, T2> source = snapshot(copy);
+        first_ = source.getFirst();
+        second_ = source.getSecond();
     }
 
     private T1 first_;
@@ -235,34 +262,48 @@ public class Pair<T1, T2> implements Iterable<Object>, Cloneable{
         this.second_ = second_;
     }
 
+    /**
+     * @return Both values of {@code pair} read together, if it supports that.
+     */
+    private static <X, Y> Pair<X, Y> snapshot(Pair<X, Y> pair) {
+        return pair instanceof AtomicPair ? ((AtomicPair<X, Y>) pair).get() : pair;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((first_ == null) ? 0 : first_.hashCode());
-        result = prime * result + ((second_ == null) ? 0 : second_.hashCode());
+        T1 first = getFirst();
+        T2 second = getSecond();
+        result = prime * result + ((first == null) ? 0 : first.hashCode());
+        result = prime * result + ((second == null) ? 0 : second.hashCode());
         return result;
     }
 
+    /**
+     * Pairs are equal when their values are equal, whatever their class, so a Pair
+     * and an AtomicPair holding the same values are equal both ways round.
+     */
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
             return true;
-        if (obj == null)
-            return false;
-        if (getClass() != obj.getClass())
+        if (!(obj instanceof Pair))
             return false;
-        @SuppressWarnings("rawtypes")
-        Pair other = (Pair) obj;
-        if (first_ == null) {
-            if (other.first_ != null)
+        Pair<?, ?> other = snapshot((Pair<?, ?>) obj);
+        T1 first = getFirst();
+        T2 second = getSecond();
+        Object otherFirst = other.getFirst();
+        Object otherSecond = other.getSecond();
+        if (first == null) {
+            if (otherFirst != null)
                 return false;
-        } else if (!first_.equals(other.first_))
+        } else if (!first.equals(otherFirst))
             return false;
-        if (second_ == null) {
-            if (other.second_ != null)
+        if (second == null) {
+            if (otherSecond != null)
                 return false;
-        } else if (!second_.equals(other.second_))
+        } else if (!second.equals(otherSecond))
             return false;
         return true;
     }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy zip of two sources into one stream. The result is as long as the shorter
+ * source and is parallel if either source is.
+ *
+ * <p>The {@code zip} overloads over arrays and {@link #zipCursor} do not allocate a pair
+ * per element. Instead each spliterator, and so each parallel task, fills in one
+ * reusable cursor. A cursor is only valid until the next element is produced, so
+ * copy it if it must outlive the pipeline stage, e.g. {@code .map(IntPair::copy)}.</p>
+ */
+public final class Zip {
+
+    private Zip() {
+    }
+
+    /**
+     * Zip two streams with a combining function.
+     */
+    public static <A, B, R> Stream<R> zip(Stream<A> a, Stream<B> b, BiFunction<? super A, ? super B, ? extends R> zipper) {
+        return StreamSupport.stream(new ZipSpliterator<A, B, R>(a.spliterator(), b.spliterator(), () -> zipper),
+                a.isParallel() || b.isParallel())
+                .onClose(a::close)
+                .onClose(b::close);
+    }
+
+    /**
+     * Zip two streams into reused Pair cursors.
+     */
+    public static <A, B> Stream<Pair<A, B>> zipCursor(Stream<A> a, Stream<B> b) {
+        return StreamSupport.stream(new ZipSpliterator<A, B, Pair<A, B>>(a.spliterator(), b.spliterator(), () -> {
+            final Pair<A, B> cursor = new Pair<A, B>();
+            return (x, y) -> {
+                cursor.setFirst(x);
+                cursor.setSecond(y);
+                return cursor;
+            };
+        }), a.isParallel() || b.isParallel())
+                .onClose(a::close)
+                .onClose(b::close);
+    }
+
+    /**
+     * Zip two int arrays into reused IntPair cursors.
+     */
+    public static Stream<IntPair> zip(final int[] a, final int[] b) {
+        return StreamSupport.stream(new RangeSpliterator<IntPair>(0, Math.min(a.length, b.length),
+                IntPair::new, (cursor, i) -> cursor.set(a[i], b[i])), false);
+    }
+
+    /**
+     * Zip two long arrays into reused LongPair cursors.
+     */
+    public static Stream<LongPair> zip(final long[] a, final long[] b) {
+        return StreamSupport.stream(new RangeSpliterator<LongPair>(0, Math.min(a.length, b.length),
+                LongPair::new, (cursor, i) -> cursor.set(a[i], b[i])), false);
+    }
+
+    /**
+     * Zip an int array and an object array into reused IntObjectPair cursors.
+     */
+    public static <T> Stream<IntObjectPair<T>> zip(final int[] a, final T[] b) {
+        return StreamSupport.stream(new RangeSpliterator<IntObjectPair<T>>(0, Math.min(a.length, b.length),
+                IntObjectPair::new, (cursor, i) -> cursor.set(a[i], b[i])), false);
+    }
+
+    /**
+     * Zip two int arrays into pairs packed with {@link PackedIntPair#pack}. Nothing is
+     * allocated per element.
+     */
+    public static LongStream zipPacked(final int[] a, final int[] b) {
+        return IntStream.range(0, Math.min(a.length, b.length))
+                .mapToLong(i -> PackedIntPair.pack(a[i], b[i]));
+    }
+
+    /**
+     * Index range over two arrays. Splits exactly in half so parallel streams divide
+     * the work evenly, and each half gets its own cursor.
+     */
+    static final class RangeSpliterator<C> implements Spliterator<C> {
+        private final Supplier<C> newCursor;
+        private final ObjIntConsumer<C> fill;
+        private final C cursor;
+        private int index;
+        private final int fence;
+
+        RangeSpliterator(int origin, int fence, Supplier<C> newCursor, ObjIntConsumer<C> fill) {
+            this.index = origin;
+            this.fence = fence;
+            this.newCursor = newCursor;
+            this.fill = fill;
+            this.cursor = newCursor.get();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super C> action) {
+            if (index < fence) {
+                fill.accept(cursor, index++);
+                action.accept(cursor);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super C> action) {
+            for (int i = index, hi = fence; i < hi; ++i) {
+                fill.accept(cursor, i);
+                action.accept(cursor);
+            }
+            index = fence;
+        }
+
+        @Override
+        public Spliterator<C> trySplit() {
+            int lo = index, mid = (lo + fence) >>> 1;
+            if (lo >= mid) {
+                return null;
+            }
+            index = mid;
+            return new RangeSpliterator<C>(lo, mid, newCursor, fill);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+
+    /**
+     * Zip of two arbitrary spliterators. Their splits cannot be assumed to line up, so
+     * splitting copies a batch of elements from both sides into arrays, in the same way
+     * as {@link Spliterators.AbstractSpliterator}.
+     */
+    static final class ZipSpliterator<A, B, R> implements Spliterator<R> {
+        private static final int BATCH_UNIT = 1 << 10;
+        private static final int MAX_BATCH = 1 << 25;
+
+        private final Spliterator<A> a;
+        private final Spliterator<B> b;
+        private final Supplier<BiFunction<? super A, ? super B, ? extends R>> zipperFactory;
+        private final BiFunction<? super A, ? super B, ? extends R> zipper;
+        private final Consumer<A> setA = x -> currentA = x;
+        private final Consumer<B> setB = y -> currentB = y;
+        private A currentA;
+        private B currentB;
+        private int batch;
+
+        ZipSpliterator(Spliterator<A> a, Spliterator<B> b,
+                       Supplier<BiFunction<? super A, ? super B, ? extends R>> zipperFactory) {
+            this.a = a;
+            this.b = b;
+            this.zipperFactory = zipperFactory;
+            this.zipper = zipperFactory.get();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            if (a.tryAdvance(setA) && b.tryAdvance(setB)) {
+                action.accept(zipper.apply(currentA, currentB));
+                currentA = null;
+                currentB = null;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Spliterator<R> trySplit() {
+            long size = estimateSize();
+            if (size <= 1) {
+                return null;
+            }
+            int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+            if ((characteristics() & SIZED) != 0 && size / 2 < n) {
+                // Keep the split smaller than the remainder so recursive splitting ends.
+                n = (int) (size / 2);
+            }
+            Object[] as = new Object[n];
+            Object[] bs = new Object[n];
+            int j = 0;
+            while (j < n && a.tryAdvance(setA) && b.tryAdvance(setB)) {
+                as[j] = currentA;
+                bs[j] = currentB;
+                ++j;
+            }
+            currentA = null;
+            currentB = null;
+            batch = j;
+            if (j == 0) {
+                return null;
+            }
+            return new ZipSpliterator<A, B, R>(
+                    (Spliterator<A>) Spliterators.spliterator(as, 0, j, Spliterator.ORDERED),
+                    (Spliterator<B>) Spliterators.spliterator(bs, 0, j, Spliterator.ORDERED),
+                    zipperFactory);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(a.estimateSize(), b.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return a.characteristics() & b.characteristics() & (ORDERED | SIZED);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import com.google.protobuf.Empty;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Minimal service start up: start a ServiceAcceptor on a free port, connect to it with a
+ * ServiceConnector, ping and shut down. Used as the training run for the AppCDS class
+ * list and to measure start up time, see the {@code appCds} and {@code startupTime}
+ * tasks in build.gradle.
+ */
+public final class StartupProbe {
+
+    private StartupProbe() {
+    }
+
+    private static final class Handler extends DiscoveryGrpc.DiscoveryImplBase {
+        @Override
+        public void ping(Empty request, StreamObserver<Empty> responseObserver) {
+            responseObserver.onNext(Empty.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void configure(Configuration request, StreamObserver<ConfigResult> responseObserver) {
+            responseObserver.onNext(ConfigResult.newBuilder()
+                    .setStatus(ConfigResult.Status.OK).build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ServiceAcceptor server = new ServiceAcceptor(ServerBuilder.forPort(0), 0, new Handler());
+        server.start();
+        ServiceConnector client = new ServiceConnector("localhost", server.getServer().getPort());
+        client.ping(10000);
+        client.configure(Configuration.getDefaultInstance(), 10000);
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        client.shutdown().blockUntilShutdown(3000);
+        server.shutdown().blockUntilShutdown(3000);
+        System.out.println("Ready after " + uptime + " ms");
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import com.google.protobuf.Empty;
+import io.grpc.stub.StreamObserver;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+	private static LoadGenerator.Options parse(String... args) {
+		return LoadGenerator.Options.parse(args);
+	}
+
+	private static void assertInvalid(String... args) {
+		try {
+			parse(args);
+			fail("accepted " + String.join(" ", args));
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParseDefaults() {
+		LoadGenerator.Options options = parse("--port=9001");
+		assertEquals("localhost", options.host);
+		assertEquals(9001, options.port);
+		assertFalse(options.local);
+		assertEquals(LoadGenerator.METHOD_PING, options.method);
+		assertEquals(LoadGenerator.MODE_RATE, options.mode);
+		assertEquals(1000, options.rate, 0);
+		assertEquals(1, options.connections);
+		assertEquals(100, options.concurrency);
+		assertEquals(0, options.payload);
+		assertEquals(5, options.warmup);
+		assertEquals(30, options.duration);
+		assertEquals(10000, options.timeout);
+		assertNull(options.output);
+	}
+
+	@Test
+	public void testParseOptions() {
+		LoadGenerator.Options options = parse("--host=example.com", "--port=443", "--method=configure",
+				"--mode=max", "--rate=2.5", "--connections=4", "--concurrency=8", "--payload=1024",
+				"--warmup=0", "--duration=60", "--timeout=500", "--output=out.txt");
+		assertEquals("example.com", options.host);
+		assertEquals(443, options.port);
+		assertEquals(LoadGenerator.METHOD_CONFIGURE, options.method);
+		assertEquals(LoadGenerator.MODE_MAX, options.mode);
+		assertEquals(2.5, options.rate, 0);
+		assertEquals(4, options.connections);
+		assertEquals(8, options.concurrency);
+		assertEquals(1024, options.payload);
+		assertEquals(0, options.warmup);
+		assertEquals(60, options.duration);
+		assertEquals(500, options.timeout);
+		assertEquals("out.txt", options.output);
+
+		options = parse("--local");
+		assertTrue(options.local);
+		assertEquals(0, options.port);
+	}
+
+	@Test
+	public void testParseRejectsInvalidOptions() {
+		assertInvalid();
+		assertInvalid("9001");
+		assertInvalid("--port=9001", "--verbose");
+		assertInvalid("--port=9001", "--method=list");
+		assertInvalid("--port=9001", "--mode=closed");
+		assertInvalid("--port=9001", "--rate=0");
+		assertInvalid("--port=9001", "--connections=0");
+		assertInvalid("--port=9001", "--concurrency=0");
+		assertInvalid("--port=9001", "--payload=-1");
+		assertInvalid("--port=9001", "--duration=0");
+		assertInvalid("--port=nine");
+	}
+
+	@Test
+	public void testPadding() {
+		assertEquals(0, LoadGenerator.padded(0).getSerializedSize());
+		for (int payload : new int[] { 1, 127, 128, 1000, 16384, 1 << 20 }) {
+			Configuration configuration = LoadGenerator.padded(payload);
+			assertTrue(payload + " bytes padded to " + configuration.getSerializedSize(),
+					configuration.getSerializedSize() >= payload);
+			// The tag and length prefix are all that is added.
+			assertTrue(configuration.getSerializedSize() <= payload + 5);
+		}
+	}
+
+	@Test
+	public void testUnsentRequestsAreRecorded() throws Exception {
+		// A service that never answers, so every request runs into its deadline and the
+		// ones scheduled after the last permit was taken are never sent.
+		ServiceAcceptor server = new ServiceAcceptor(0, new DiscoveryGrpc.DiscoveryImplBase() {
+			@Override
+			public void ping(Empty request, StreamObserver<Empty> responseObserver) {
+			}
+		});
+		server.start();
+		LoadGenerator generator = new LoadGenerator(parse("--port=" + server.getServer().getPort(),
+				"--rate=100", "--concurrency=1", "--warmup=0", "--duration=1", "--timeout=200"));
+		try {
+			LoadGenerator.Result result = generator.run();
+			assertEquals(0, result.requests);
+			assertTrue(result.errors > 0);
+			assertTrue(result.unsent > 0);
+			// Everything scheduled is accounted for, sent or not.
+			assertEquals(100, result.errors + result.unsent);
+			assertEquals(result.errors + result.unsent, result.responseTime.getTotalCount());
+			assertEquals(result.errors, result.serviceTime.getTotalCount());
+		} finally {
+			generator.shutdown();
+			assertTrue(server.shutdown().blockUntilShutdown(3000));
+		}
+	}
+}
@@ -10,6 +10,16 @@ package ai.marbles.grpc;
 import com.google.protobuf.Empty;
 import io.grpc.stub.StreamObserver;
 import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.internal.AtomicBackoff;
+import io.grpc.internal.GrpcUtil;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import org.junit.Test;
@@ -74,4 +84,138 @@ public class ServiceTest {
 			fail(e.getMessage());
 		}
 	}
+
+	/**
+	 * Read a private field of a gRPC internal object, searching superclasses and
+	 * unwrapping delegating transport factories.
+	 */
+	private static Object field(Object target, String name) throws ReflectiveOperationException {
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				if (field.getName().equals(name)) {
+					field.setAccessible(true);
+					return field.get(target);
+				}
+			}
+		}
+		return field(field(target, "delegate"), name);
+	}
+
+	private static long clientKeepAliveTime(ServiceConnector client) throws ReflectiveOperationException {
+		Object transportFactory = field(client.getChannel(), "transportFactory");
+		return ((AtomicBackoff) field(transportFactory, "keepAliveTimeNanos")).getState().get();
+	}
+
+	@Test
+	public void testSettingsAreOptIn() throws Exception {
+		// Without settings the server and channel get the gRPC defaults: servers have no
+		// idle or age limits and only allow pings every 5 minutes during calls, and
+		// clients do not ping at all.
+		ServiceAcceptor server = new ServiceAcceptor(0, new TestHandler());
+		Object transportServer = field(server.getServer(), "transportServer");
+		assertEquals(GrpcUtil.DEFAULT_SERVER_KEEPALIVE_TIME_NANOS, field(transportServer, "keepAliveTimeInNanos"));
+		assertEquals(Long.MAX_VALUE, field(transportServer, "maxConnectionIdleInNanos"));
+		assertEquals(Long.MAX_VALUE, field(transportServer, "maxConnectionAgeInNanos"));
+		assertEquals(TimeUnit.MINUTES.toNanos(5), field(transportServer, "permitKeepAliveTimeInNanos"));
+		assertEquals(false, field(transportServer, "permitKeepAliveWithoutCalls"));
+
+		ServiceConnector client = new ServiceConnector("localhost", 9004);
+		assertEquals(GrpcUtil.KEEPALIVE_TIME_NANOS_DISABLED, clientKeepAliveTime(client));
+		assertEquals(TimeUnit.MINUTES.toMillis(30), field(client.getChannel(), "idleTimeoutMillis"));
+		client.shutdown();
+
+		// Default settings add keepalive, but still no connection idle or age limits,
+		// which would break long streams, and no client pings without calls, which
+		// servers that do not permit them answer with too_many_pings.
+		server = new ServiceAcceptor(0, new TestHandler(), new ServiceAcceptor.Settings());
+		transportServer = field(server.getServer(), "transportServer");
+		assertEquals(TimeUnit.SECONDS.toNanos(60), field(transportServer, "keepAliveTimeInNanos"));
+		assertEquals(Long.MAX_VALUE, field(transportServer, "maxConnectionIdleInNanos"));
+		assertEquals(Long.MAX_VALUE, field(transportServer, "maxConnectionAgeInNanos"));
+		assertEquals(TimeUnit.SECONDS.toNanos(30), field(transportServer, "permitKeepAliveTimeInNanos"));
+
+		client = new ServiceConnector("localhost", 9004, new ServiceConnector.Settings().warmUp(false));
+		Object transportFactory = field(client.getChannel(), "transportFactory");
+		assertEquals(TimeUnit.SECONDS.toNanos(60), clientKeepAliveTime(client));
+		assertEquals(false, field(transportFactory, "keepAliveWithoutCalls"));
+		// Never idle, see ServiceConnector.Settings.idleTimeout.
+		assertEquals(-1L, field(client.getChannel(), "idleTimeoutMillis"));
+		client.shutdown();
+	}
+
+	/**
+	 * Wait for the channel to leave READY, e.g. because the server closed the connection.
+	 */
+	private static boolean awaitNotReady(ServiceConnector client, long timeout) throws InterruptedException {
+		ManagedChannel channel = (ManagedChannel) client.getChannel();
+		CountDownLatch changed = new CountDownLatch(1);
+		channel.notifyWhenStateChanged(ConnectivityState.READY, changed::countDown);
+		return channel.getState(false) != ConnectivityState.READY || changed.await(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void testMaxConnectionIdle() {
+		try {
+			// The server must permit the client's keepalive, or it closes the connection
+			// with too_many_pings rather than for being idle.
+			ServiceAcceptor server = new ServiceAcceptor(0, new TestHandler(), new ServiceAcceptor.Settings()
+					.permitKeepAliveTime(10000)
+					.maxConnectionIdle(1000));
+			server.start();
+			int port = server.getServer().getPort();
+
+			ServiceConnector client = new ServiceConnector("localhost", port, new ServiceConnector.Settings()
+					.keepAliveTime(10000)
+					.keepAliveTimeout(5000));
+			// Warm up started connecting in the constructor.
+			assertTrue(client.awaitReady(3000));
+			assertTrue(client.ping(1000));
+			// The server closes the connection once it has had no calls for a second, and
+			// the next call reconnects.
+			assertTrue(awaitNotReady(client, 5000));
+			assertTrue(client.ping(3000));
+
+			assertTrue(client.shutdown().blockUntilShutdown(3000));
+			assertFalse(client.awaitReady(100));
+			assertTrue(server.shutdown().blockUntilShutdown(3000));
+		} catch(Exception e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMaxConnectionAge() {
+		try {
+			ServiceAcceptor server = new ServiceAcceptor(0, new TestHandler(), new ServiceAcceptor.Settings()
+					.maxConnectionAge(1000)
+					.maxConnectionAgeGrace(1000));
+			server.start();
+			int port = server.getServer().getPort();
+
+			ServiceConnector client = new ServiceConnector("localhost", port, new ServiceConnector.Settings());
+			assertTrue(client.awaitReady(3000));
+			CountDownLatch closed = new CountDownLatch(1);
+			((ManagedChannel) client.getChannel()).notifyWhenStateChanged(ConnectivityState.READY, closed::countDown);
+			// Calls keep the connection busy, it is still closed once it is a second old
+			// and the calls after that reconnect.
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (closed.getCount() > 0 && System.nanoTime() < deadline) {
+				try {
+					assertTrue(client.ping(3000));
+				} catch (ExecutionException e) {
+					// A call started just as the server sends GOAWAY fails, gRPC does not
+					// retry it.
+					assertEquals(Status.Code.UNAVAILABLE, Status.fromThrowable(e).getCode());
+				}
+				Thread.sleep(50);
+			}
+			assertEquals(0, closed.getCount());
+			assertTrue(client.ping(3000));
+
+			assertTrue(client.shutdown().blockUntilShutdown(3000));
+			assertTrue(server.shutdown().blockUntilShutdown(3000));
+		} catch(Exception e) {
+			fail(e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.grpc;
+
+import com.google.protobuf.Int32Value;
+import io.grpc.CallOptions;
+import io.grpc.Context;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class StreamingTest {
+	private static final int COUNT = 10000;
+	private static final int PREFETCH = 16;
+
+	private static final MethodDescriptor<Int32Value, Int32Value> RANGE = method(
+			MethodDescriptor.MethodType.SERVER_STREAMING, "Range");
+
+	private static final MethodDescriptor<Int32Value, Int32Value> SUM = method(
+			MethodDescriptor.MethodType.CLIENT_STREAMING, "Sum");
+
+	private static MethodDescriptor<Int32Value, Int32Value> method(MethodDescriptor.MethodType type, String name) {
+		return MethodDescriptor.<Int32Value, Int32Value>newBuilder()
+				.setType(type)
+				.setFullMethodName(MethodDescriptor.generateFullMethodName("test.Streaming", name))
+				.setRequestMarshaller(ProtoUtils.marshaller(Int32Value.getDefaultInstance()))
+				.setResponseMarshaller(ProtoUtils.marshaller(Int32Value.getDefaultInstance()))
+				.build();
+	}
+
+	/** Counts the messages taken from it. */
+	private static class Source implements Iterator<Int32Value> {
+		final AtomicInteger produced = new AtomicInteger();
+		final int count;
+
+		Source(int count) {
+			this.count = count;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return produced.get() < count;
+		}
+
+		@Override
+		public Int32Value next() {
+			return Int32Value.newBuilder().setValue(produced.getAndIncrement()).build();
+		}
+	}
+
+	private final AtomicInteger serverProduced = new AtomicInteger();
+	private final CountDownLatch serverCancelled = new CountDownLatch(1);
+
+	private ServerServiceDefinition service() {
+		return ServerServiceDefinition.builder("test.Streaming")
+				.addMethod(RANGE, ServerCalls.asyncServerStreamingCall(
+						(Int32Value request, StreamObserver<Int32Value> responseObserver) -> {
+							Context.current().addListener(context -> serverCancelled.countDown(), Runnable::run);
+							Source source = new Source(request.getValue()) {
+								@Override
+								public Int32Value next() {
+									serverProduced.incrementAndGet();
+									return super.next();
+								}
+							};
+							StreamSender.serve(source, responseObserver);
+						}))
+				.addMethod(SUM, ServerCalls.asyncClientStreamingCall(
+						(StreamObserver<Int32Value> responseObserver) -> {
+							StreamReceiver<Int32Value> values = StreamReceiver.forServer(responseObserver, PREFETCH);
+							CompletableFuture.runAsync(() -> {
+								int sum = 0;
+								while (values.hasNext()) {
+									sum += values.next().getValue();
+								}
+								responseObserver.onNext(Int32Value.newBuilder().setValue(sum).build());
+								responseObserver.onCompleted();
+							});
+							return values;
+						}))
+				.build();
+	}
+
+	@Test
+	public void testServerStreamingIsBounded() throws Exception {
+		String name = "StreamingTest-" + System.nanoTime();
+		ServiceAcceptor server = new ServiceAcceptor(InProcessServerBuilder.forName(name), 0, this::service);
+		server.start();
+		ServiceConnector client = new ServiceConnector(InProcessChannelBuilder.forName(name));
+
+		StreamReceiver<Int32Value> values = new StreamReceiver<>(PREFETCH);
+		ClientCalls.asyncServerStreamingCall(client.getChannel().newCall(RANGE, CallOptions.DEFAULT),
+				Int32Value.newBuilder().setValue(COUNT).build(), values);
+		int consumed = 0;
+		int maxAhead = 0;
+		while (values.hasNext()) {
+			assertEquals(consumed, values.next().getValue());
+			++consumed;
+			maxAhead = Math.max(maxAhead, serverProduced.get() - consumed);
+		}
+		assertEquals(COUNT, consumed);
+		// The sender only runs ahead by what the receiver requested, plus what the
+		// transport buffers.
+		assertTrue("ran ahead by " + maxAhead, maxAhead <= 2 * PREFETCH);
+
+		assertTrue(client.shutdown().blockUntilShutdown(3000));
+		assertTrue(server.shutdown().blockUntilShutdown(3000));
+	}
+
+	@Test
+	public void testCancelStopsTheSender() throws Exception {
+		String name = "StreamingTest-" + System.nanoTime();
+		ServiceAcceptor server = new ServiceAcceptor(InProcessServerBuilder.forName(name), 0, this::service);
+		server.start();
+		ServiceConnector client = new ServiceConnector(InProcessChannelBuilder.forName(name));
+
+		try (StreamReceiver<Int32Value> values = new StreamReceiver<>(PREFETCH)) {
+			ClientCalls.asyncServerStreamingCall(client.getChannel().newCall(RANGE, CallOptions.DEFAULT),
+					Int32Value.newBuilder().setValue(COUNT).build(), values);
+			for (int i = 0; i < 10; ++i) {
+				assertTrue(values.hasNext());
+				assertEquals(i, values.next().getValue());
+			}
+		}
+		assertTrue(serverCancelled.await(3, TimeUnit.SECONDS));
+		assertTrue("produced " + serverProduced.get(), serverProduced.get() < COUNT);
+
+		assertTrue(client.shutdown().blockUntilShutdown(3000));
+		assertTrue(server.shutdown().blockUntilShutdown(3000));
+	}
+
+	@Test
+	public void testClientStreaming() throws Exception {
+		String name = "StreamingTest-" + System.nanoTime();
+		ServiceAcceptor server = new ServiceAcceptor(InProcessServerBuilder.forName(name), 0, this::service);
+		server.start();
+		ServiceConnector client = new ServiceConnector(InProcessChannelBuilder.forName(name));
+
+		Source source = new Source(COUNT);
+		StreamReceiver<Int32Value> result = new StreamReceiver<>(1);
+		ClientCalls.asyncClientStreamingCall(client.getChannel().newCall(SUM, CallOptions.DEFAULT),
+				StreamSender.forClient(source, result));
+		assertTrue(result.hasNext());
+		assertEquals(COUNT * (COUNT - 1) / 2, result.next().getValue());
+		assertFalse(result.hasNext());
+		assertEquals(COUNT, source.produced.get());
+
+		assertTrue(client.shutdown().blockUntilShutdown(3000));
+		assertTrue(server.shutdown().blockUntilShutdown(3000));
+	}
+
+	@Test
+	public void testNoRequestBeforeTheCallStarts() throws Exception {
+		List<Integer> requests = new CopyOnWriteArrayList<>();
+		AtomicBoolean started = new AtomicBoolean();
+		StreamReceiver<Int32Value> values = new StreamReceiver<>(PREFETCH);
+		// The stub calls beforeStart, then starts the call and requests one message.
+		values.beforeStart(new ClientCallStreamObserver<Object>() {
+			@Override
+			public void cancel(String message, Throwable cause) {
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setOnReadyHandler(Runnable onReadyHandler) {
+			}
+
+			@Override
+			public void disableAutoInboundFlowControl() {
+			}
+
+			@Override
+			public void request(int count) {
+				if (!started.get()) {
+					throw new IllegalStateException("Not started");
+				}
+				requests.add(count);
+			}
+
+			@Override
+			public void setMessageCompression(boolean enable) {
+			}
+
+			@Override
+			public void onNext(Object value) {
+			}
+
+			@Override
+			public void onError(Throwable t) {
+			}
+
+			@Override
+			public void onCompleted() {
+			}
+		});
+
+		// The consumer gets to hasNext first and must wait without requesting anything.
+		CompletableFuture<Boolean> hasNext = new CompletableFuture<>();
+		Thread consumer = new Thread(() -> {
+			try {
+				hasNext.complete(values.hasNext());
+			} catch (RuntimeException e) {
+				hasNext.completeExceptionally(e);
+			}
+		});
+		consumer.start();
+		while (consumer.getState() != Thread.State.WAITING && consumer.getState() != Thread.State.TERMINATED) {
+			Thread.yield();
+		}
+		assertFalse(hasNext.isDone());
+		assertTrue(requests.isEmpty());
+
+		started.set(true);
+		values.onNext(Int32Value.newBuilder().setValue(1).build());
+		assertTrue(hasNext.get(3, TimeUnit.SECONDS));
+		assertEquals(1, values.next().getValue());
+		assertEquals(PREFETCH - 1, (int) requests.get(0));
+		values.onCompleted();
+		assertFalse(values.hasNext());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Marbles AI Corp. 2016-2017.
+ * All rights reserved.
+ */
+
+package ai.marbles.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PairTest {
+
+	@Test
+	public void testSwap() {
+		Pair<String, String> plain = Pair.makePair("a", "b");
+		Pair.swap(plain);
+		assertEquals("b", plain.getFirst());
+		assertEquals("a", plain.getSecond());
+
+		Pair<String, String> atomic = Pair.atomicPair(Pair.makePair("a", "b"));
+		Pair.swap(atomic);
+		assertEquals("b", atomic.getFirst());
+		assertEquals("a", atomic.getSecond());
+	}
+
+	@Test
+	public void testAtomicPairCopyAndEquals() {
+		Pair<String, String> plain = Pair.makePair("a", "b");
+		AtomicPair<String, String> atomic = new AtomicPair<>("a", "b");
+		assertEquals(plain, new Pair<>(atomic));
+		assertEquals(plain, atomic);
+		assertEquals(atomic, plain);
+		assertEquals(plain.hashCode(), atomic.hashCode());
+		assertEquals(plain, Pair.immutablePair(atomic));
+		assertNotEquals(atomic, Pair.makePair("a", "c"));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testSynchronizedPairIsAView() {
+		Pair<String, String> plain = Pair.makePair("a", "b");
+		Pair<String, String> view = Pair.synchronizedPair(plain);
+		view.setFirst("c");
+		assertEquals("c", plain.getFirst());
+		plain.setSecond("d");
+		assertEquals("d", view.getSecond());
+		assertEquals(plain, view);
+		assertEquals(view, plain);
+	}
+
+	@Test
+	public void testAtomicPairConcurrentUpdates() throws InterruptedException {
+		final AtomicPair<Integer, Integer> pair = new AtomicPair<>(0, 0);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; ++t) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10000; ++i) {
+					pair.accumulateFirst(1, Integer::sum);
+					Pair<Integer, Integer> current;
+					do {
+						current = pair.get();
+					} while (!pair.compareAndSet(current.getFirst(), current.getSecond(),
+							current.getFirst(), current.getSecond() + 1));
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(Integer.valueOf(40000), pair.getFirst());
+		assertEquals(Integer.valueOf(40000), pair.getSecond());
+		assertEquals(Pair.makePair(40000, 40000), pair.get());
+	}
+
+	@Test
+	public void testMakePairFromArrayKeepsLastElement() {
+		Pair<Integer, Integer[]> pair = Pair.makePairFromArray(1, 2, 3);
+		assertEquals(Integer.valueOf(1), pair.getFirst());
+		assertArrayEquals(new Integer[] {2, 3}, pair.getSecond());
+	}
+
+	@Test
+	public void testZipArrays() {
+		int[] a = IntStream.range(0, 10000).toArray();
+		int[] b = IntStream.range(0, 10001).map(i -> 2 * i).toArray();
+
+		assertEquals(10000, Zip.zip(a, b).parallel().count());
+		assertEquals(3L * 9999 * 10000 / 2, Zip.zip(a, b).parallel()
+				.mapToLong(p -> p.getFirst() + p.getSecond()).sum());
+		assertEquals(3L * 9999 * 10000 / 2, Zip.zipPacked(a, b).parallel()
+				.map(p -> PackedIntPair.first(p) + PackedIntPair.second(p)).sum());
+
+		List<IntPair> copies = Zip.zip(a, b).limit(2).map(IntPair::copy).collect(Collectors.toList());
+		assertEquals(Arrays.asList(new IntPair(0, 0), new IntPair(1, 2)), copies);
+	}
+
+	@Test
+	public void testZipStreams() {
+		Stream<Integer> a = IntStream.range(0, 5000).boxed();
+		Stream<String> b = IntStream.range(0, 5000).mapToObj(Integer::toString);
+		List<String> zipped = Zip.zip(a, b, (x, y) -> x + "=" + y).parallel().collect(Collectors.toList());
+		assertEquals(5000, zipped.size());
+		assertEquals("4321=4321", zipped.get(4321));
+
+		long matches = Zip.zipCursor(IntStream.range(0, 3000).boxed().parallel(), IntStream.range(0, 3000).boxed())
+				.filter(p -> p.getFirst().equals(p.getSecond()))
+				.count();
+		assertEquals(3000, matches);
+	}
+}